@@ -113,6 +113,54 @@ public class AtomicInteger extends Number implements java.io.Serializable {
         return unsafe.compareAndSwapInt(this, valueOffset, expect, update);
     }
 
+    /*--------------------------------弱内存序操作--------------------------------*/
+
+    /**
+     * 内存序从弱到强：plain < opaque < acquire/release < volatile
+     * Unsafe(JDK 8)没有opaque/acquire 用最接近且不弱于要求的操作实现：
+     * 1.getPlain/setPlain：普通读写 没有任何顺序保证 JIT可以缓存到寄存器、合并、重排 适合单线程阶段或者之后有其他同步
+     * 2.getOpaque/getAcquire：volatile读 x86上就是普通的mov 只限制编译器重排
+     * 3.setOpaque/setRelease：putOrdered 与lazySet相同 之前的读写不会重排到它之后
+     * 省去volatile写的StoreLoad屏障(x86上的lock addl) 单写者计数器的主要收益在这里
+     * 4.weakCompareAndSetPlain/Acquire/Release：都是compareAndSwap x86上CAS本身就是全屏障 没有更弱的版本
+     */
+
+    public final int getPlain() {
+        return unsafe.getInt(this, valueOffset);
+    }
+
+    public final void setPlain(int newValue) {
+        unsafe.putInt(this, valueOffset, newValue);
+    }
+
+    public final int getOpaque() {
+        return value;
+    }
+
+    public final void setOpaque(int newValue) {
+        unsafe.putOrderedInt(this, valueOffset, newValue);
+    }
+
+    public final int getAcquire() {
+        return value;
+    }
+
+    public final void setRelease(int newValue) {
+        unsafe.putOrderedInt(this, valueOffset, newValue);
+    }
+
+    public final boolean weakCompareAndSetPlain(int expect, int update) {
+        return unsafe.compareAndSwapInt(this, valueOffset, expect, update);
+    }
+
+    public final boolean weakCompareAndSetAcquire(int expect, int update) {
+        return unsafe.compareAndSwapInt(this, valueOffset, expect, update);
+    }
+
+    public final boolean weakCompareAndSetRelease(int expect, int update) {
+        return unsafe.compareAndSwapInt(this, valueOffset, expect, update);
+    }
+
     /**
      * 自增 返回旧值
      * @return
@@ -270,6 +270,133 @@ public class AtomicIntegerArray implements java.io.Serializable {
         return next;
     }
 
+    /*--------------------------------弱内存序操作 语义同AtomicInteger--------------------------------*/
+
+    public final int getPlain(int i) {
+        return unsafe.getInt(array, checkedByteOffset(i));
+    }
+
+    public final void setPlain(int i, int newValue) {
+        unsafe.putInt(array, checkedByteOffset(i), newValue);
+    }
+
+    public final int getOpaque(int i) {
+        return getRaw(checkedByteOffset(i));
+    }
+
+    public final void setOpaque(int i, int newValue) {
+        unsafe.putOrderedInt(array, checkedByteOffset(i), newValue);
+    }
+
+    public final int getAcquire(int i) {
+        return getRaw(checkedByteOffset(i));
+    }
+
+    public final void setRelease(int i, int newValue) {
+        unsafe.putOrderedInt(array, checkedByteOffset(i), newValue);
+    }
+
+    public final boolean weakCompareAndSetPlain(int i, int expect, int update) {
+        return compareAndSetRaw(checkedByteOffset(i), expect, update);
+    }
+
+    public final boolean weakCompareAndSetAcquire(int i, int expect, int update) {
+        return compareAndSetRaw(checkedByteOffset(i), expect, update);
+    }
+
+    public final boolean weakCompareAndSetRelease(int i, int expect, int update) {
+        return compareAndSetRaw(checkedByteOffset(i), expect, update);
+    }
+
+    /*--------------------------------批量操作--------------------------------*/
+
+    /**
+     * 批量增加 deltas[i]加到第i个元素 跳过0
+     * 内存语义：每个元素是一次getAndAdd 单个元素是原子的 整体不是原子的 其他线程可能看到只加了一部分
+     * @param deltas 长度不能超过length()
+     */
+    public final void addAll(int[] deltas) {
+        if (deltas.length > array.length) {
+            throw new IndexOutOfBoundsException("length " + deltas.length);
+        }
+        for (int i = 0; i < deltas.length; i++) {
+            if (deltas[ i ] != 0) {
+                unsafe.getAndAddInt(array, byteOffset(i), deltas[ i ]);
+            }
+        }
+    }
+
+    /**
+     * 复制到dest
+     * 内存语义：先loadFence 再普通读取(System.arraycopy 可以向量化)
+     * *每个元素不会撕裂 读到的是某次写入的值
+     * *调用之前已经通过其他同步(join、volatile读等)可见的写入一定能读到
+     * *并发的写入可能读到也可能读不到 元素之间没有顺序 不是原子快照 需要逐个volatile读时使用get(i)
+     * @param dest 长度不能小于length()
+     * @return dest
+     */
+    public final int[] snapshot(int[] dest) {
+        if (dest.length < array.length) {
+            throw new IndexOutOfBoundsException("length " + dest.length);
+        }
+        unsafe.loadFence();
+        System.arraycopy(array, 0, dest, 0, array.length);
+        return dest;
+    }
+
+    /**
+     * 所有元素的和 内存语义同snapshot()
+     */
+    public final long sum() {
+        return sum(0, array.length);
+    }
+
+    /**
+     * [fromIndex, toIndex)的和 内存语义同snapshot()
+     */
+    public final long sum(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        unsafe.loadFence();
+        final int[] a = array;
+        long sum = 0L;
+        for (int i = fromIndex; i < toIndex; i++) {
+            sum += a[ i ];
+        }
+        return sum;
+    }
+
+    /**
+     * [fromIndex, toIndex)置为value 不使用CAS
+     * 内存语义：普通写入(Arrays.fill) 之后storeFence 之后的写入(例如发布标志的volatile写)不会重排到前面
+     * 并发的getAndAdd/compareAndSet可能被覆盖 只适合没有写入者时(例如统计周期切换之后)重置
+     */
+    public final void fill(int fromIndex, int toIndex, int value) {
+        checkRange(fromIndex, toIndex);
+        java.util.Arrays.fill(array, fromIndex, toIndex, value);
+        unsafe.storeFence();
+    }
+
+    /**
+     * [fromIndex, toIndex)求和并置0 每个元素一次getAndSet 并发的增加不会丢失
+     */
+    public final long sumThenReset(int fromIndex, int toIndex) {
+        checkRange(fromIndex, toIndex);
+        long sum = 0L;
+        for (int i = fromIndex; i < toIndex; i++) {
+            long offset = byteOffset(i);
+            if (getRaw(offset) != 0) {
+                sum += unsafe.getAndSetInt(array, offset, 0);
+            }
+        }
+        return sum;
+    }
+
+    private void checkRange(int fromIndex, int toIndex) {
+        if (fromIndex < 0 || toIndex > array.length || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("range [" + fromIndex + ", " + toIndex + ")");
+        }
+    }
+
     /**
      * Returns the String representation of the current values of array.
      * @return the String representation of the current values of array
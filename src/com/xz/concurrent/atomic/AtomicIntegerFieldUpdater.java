@@ -68,6 +68,47 @@ public abstract class AtomicIntegerFieldUpdater<T> {
      */
     public abstract int get(T obj);
 
+    /*--------------------------------弱内存序操作 语义同AtomicInteger--------------------------------*/
+
+    /**
+     * 默认实现使用更强的操作 实现类用Unsafe覆盖
+     */
+    public int getPlain(T obj) {
+        return get(obj);
+    }
+
+    public void setPlain(T obj, int newValue) {
+        lazySet(obj, newValue);
+    }
+
+    public int getOpaque(T obj) {
+        return get(obj);
+    }
+
+    public void setOpaque(T obj, int newValue) {
+        lazySet(obj, newValue);
+    }
+
+    public int getAcquire(T obj) {
+        return get(obj);
+    }
+
+    public void setRelease(T obj, int newValue) {
+        lazySet(obj, newValue);
+    }
+
+    public boolean weakCompareAndSetPlain(T obj, int expect, int update) {
+        return compareAndSet(obj, expect, update);
+    }
+
+    public boolean weakCompareAndSetAcquire(T obj, int expect, int update) {
+        return compareAndSet(obj, expect, update);
+    }
+
+    public boolean weakCompareAndSetRelease(T obj, int expect, int update) {
+        return compareAndSet(obj, expect, update);
+    }
+
     /**
      * 获取并设置新值 返回原值
      * @param obj An object whose field to get and set
@@ -338,8 +379,16 @@ public abstract class AtomicIntegerFieldUpdater<T> {
 
         /**
          * 判断是否是同一个类型
+         * 1.快速路径：obj的类型正好是cclass 只比较一次类型指针 绝大多数调用走这里
+         * 2.慢速路径：obj是cclass的子类或者null时才调用isInstance()
          */
         private final void accessCheck(T obj) {
+            if (obj == null || obj.getClass() != cclass) {
+                fullCheck(obj);
+            }
+        }
+
+        private final void fullCheck(T obj) {
             if (!cclass.isInstance(obj)) {
                 throwAccessCheckException(obj);
             }
@@ -389,6 +438,18 @@ public abstract class AtomicIntegerFieldUpdater<T> {
             return U.getIntVolatile(obj, offset);
         }
 
+        @Override
+        public final int getPlain(T obj) {
+            accessCheck(obj);
+            return U.getInt(obj, offset);
+        }
+
+        @Override
+        public final void setPlain(T obj, int newValue) {
+            accessCheck(obj);
+            U.putInt(obj, offset, newValue);
+        }
+
         @Override
         public final int getAndSet(T obj, int newValue) {
             accessCheck(obj);
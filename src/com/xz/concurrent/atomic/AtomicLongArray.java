@@ -0,0 +1,286 @@
+package com.xz.concurrent.atomic;
+
+/**
+ * 使用场景:对一系列的long进行同步更新 与AtomicIntegerArray相同 元素为long
+ * 用原子数组更新long数组的元素
+ */
+
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+
+import sun.misc.Unsafe;
+
+public class AtomicLongArray implements java.io.Serializable {
+
+    private static final long serialVersionUID = -2308431214976778248L;
+
+    private static final Unsafe unsafe = Unsafe.getUnsafe();
+
+    /**
+     * long类型数组第一个元素的内存偏移量
+     */
+    private static final int base = unsafe.arrayBaseOffset(long[].class);
+
+    /**
+     * 每个元素的地址偏移量
+     */
+    private static final int shift;
+
+    private final long[] array;
+
+    static {
+        //long数组中元素的字节数
+        int scale = unsafe.arrayIndexScale(long[].class);
+        if ((scale & (scale - 1)) != 0) {
+            throw new Error("data type scale not a power of two");
+        }
+        shift = 31 - Integer.numberOfLeadingZeros(scale);
+    }
+
+    /**
+     * 获取第i个元素的偏移量 先检查下标
+     */
+    private long checkedByteOffset(int i) {
+        if (i < 0 || i >= array.length) {
+            throw new IndexOutOfBoundsException("index " + i);
+        }
+        return byteOffset(i);
+    }
+
+    /**
+     * 计算第i个元素的偏移量
+     */
+    private static long byteOffset(int i) {
+        return ((long) i << shift) + base;
+    }
+
+    public AtomicLongArray(int length) {
+        array = new long[ length ];
+    }
+
+    public AtomicLongArray(long[] array) {
+        this.array = array.clone();
+    }
+
+    /**
+     * 获取数组长度
+     */
+    public final int length() {
+        return array.length;
+    }
+
+    /**
+     * 获取数组第i个元素的值
+     */
+    public final long get(int i) {
+        return getRaw(checkedByteOffset(i));
+    }
+
+    private long getRaw(long offset) {
+        return unsafe.getLongVolatile(array, offset);
+    }
+
+    /**
+     * 将数组中的第i个元素设置为新值
+     */
+    public final void set(int i, long newValue) {
+        unsafe.putLongVolatile(array, checkedByteOffset(i), newValue);
+    }
+
+    /**
+     * 设置新值：不保证修改元素对其他线程的立即可见性
+     */
+    public final void lazySet(int i, long newValue) {
+        unsafe.putOrderedLong(array, checkedByteOffset(i), newValue);
+    }
+
+    /**
+     * 获取元素并修改元素为新值 返回旧值
+     */
+    public final long getAndSet(int i, long newValue) {
+        return unsafe.getAndSetLong(array, checkedByteOffset(i), newValue);
+    }
+
+    /**
+     * 比较并修改元素 修改成功 ：true 否则返回false
+     */
+    public final boolean compareAndSet(int i, long expect, long update) {
+        return compareAndSetRaw(checkedByteOffset(i), expect, update);
+    }
+
+    private boolean compareAndSetRaw(long offset, long expect, long update) {
+        return unsafe.compareAndSwapLong(array, offset, expect, update);
+    }
+
+    /**
+     * 同上
+     */
+    public final boolean weakCompareAndSet(int i, long expect, long update) {
+        return compareAndSet(i, expect, update);
+    }
+
+    public final long getAndIncrement(int i) {
+        return getAndAdd(i, 1L);
+    }
+
+    public final long getAndDecrement(int i) {
+        return getAndAdd(i, -1L);
+    }
+
+    /**
+     * 下标为i的元素增加指定增量 返回旧值
+     */
+    public final long getAndAdd(int i, long delta) {
+        return unsafe.getAndAddLong(array, checkedByteOffset(i), delta);
+    }
+
+    public final long incrementAndGet(int i) {
+        return getAndAdd(i, 1L) + 1L;
+    }
+
+    public final long decrementAndGet(int i) {
+        return getAndAdd(i, -1L) - 1L;
+    }
+
+    /**
+     * 下标为i的元素增加指定增量 并返回新值
+     */
+    public final long addAndGet(int i, long delta) {
+        return getAndAdd(i, delta) + delta;
+    }
+
+    /**
+     * 更新下标为i的元素 并返回旧值
+     */
+    public final long getAndUpdate(int i, LongUnaryOperator updateFunction) {
+        long offset = checkedByteOffset(i);
+        long prev, next;
+        do {
+            prev = getRaw(offset);
+            next = updateFunction.applyAsLong(prev);
+        }
+        while (!compareAndSetRaw(offset, prev, next));
+        return prev;
+    }
+
+    /**
+     * 更新下标i的值 并且返回新值
+     */
+    public final long updateAndGet(int i, LongUnaryOperator updateFunction) {
+        long offset = checkedByteOffset(i);
+        long prev, next;
+        do {
+            prev = getRaw(offset);
+            next = updateFunction.applyAsLong(prev);
+        }
+        while (!compareAndSetRaw(offset, prev, next));
+        return next;
+    }
+
+    /**
+     * 更新下标i的值 并返回旧值
+     */
+    public final long getAndAccumulate(int i, long x, LongBinaryOperator accumulatorFunction) {
+        long offset = checkedByteOffset(i);
+        long prev, next;
+        do {
+            prev = getRaw(offset);
+            next = accumulatorFunction.applyAsLong(prev, x);
+        }
+        while (!compareAndSetRaw(offset, prev, next));
+        return prev;
+    }
+
+    /**
+     * 更新下标i的值 并返回新值
+     */
+    public final long accumulateAndGet(int i, long x, LongBinaryOperator accumulatorFunction) {
+        long offset = checkedByteOffset(i);
+        long prev, next;
+        do {
+            prev = getRaw(offset);
+            next = accumulatorFunction.applyAsLong(prev, x);
+        }
+        while (!compareAndSetRaw(offset, prev, next));
+        return next;
+    }
+
+    /*--------------------------------批量操作 内存语义同AtomicIntegerArray--------------------------------*/
+
+    /**
+     * 批量增加 deltas[i]加到第i个元素 跳过0 单个元素原子 整体不是原子的
+     */
+    public final void addAll(long[] deltas) {
+        if (deltas.length > array.length) {
+            throw new IndexOutOfBoundsException("length " + deltas.length);
+        }
+        for (int i = 0; i < deltas.length; i++) {
+            if (deltas[ i ] != 0L) {
+                unsafe.getAndAddLong(array, byteOffset(i), deltas[ i ]);
+            }
+        }
+    }
+
+    /**
+     * 先loadFence再System.arraycopy 每个元素不会撕裂 不是原子快照
+     */
+    public final long[] snapshot(long[] dest) {
+        if (dest.length < array.length) {
+            throw new IndexOutOfBoundsException("length " + dest.length);
+        }
+        unsafe.loadFence();
+        System.arraycopy(array, 0, dest, 0, array.length);
+        return dest;
+    }
+
+    public final long sum() {
+        unsafe.loadFence();
+        long sum = 0L;
+        for (long v : array) {
+            sum += v;
+        }
+        return sum;
+    }
+
+    /**
+     * [fromIndex, toIndex)置为value 普通写入后storeFence 并发的更新可能被覆盖
+     */
+    public final void fill(int fromIndex, int toIndex, long value) {
+        if (fromIndex < 0 || toIndex > array.length || fromIndex > toIndex) {
+            throw new IndexOutOfBoundsException("range [" + fromIndex + ", " + toIndex + ")");
+        }
+        java.util.Arrays.fill(array, fromIndex, toIndex, value);
+        unsafe.storeFence();
+    }
+
+    /**
+     * 求和并置0 每个元素一次getAndSet 并发的增加不会丢失
+     */
+    public final long sumThenReset() {
+        long sum = 0L;
+        for (int i = 0; i < array.length; i++) {
+            long offset = byteOffset(i);
+            if (getRaw(offset) != 0L) {
+                sum += unsafe.getAndSetLong(array, offset, 0L);
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        int iMax = array.length - 1;
+        if (iMax == -1) {
+            return "[]";
+        }
+        StringBuilder b = new StringBuilder();
+        b.append('[');
+        for (int i = 0; ; i++) {
+            b.append(getRaw(byteOffset(i)));
+            if (i == iMax) {
+                return b.append(']').toString();
+            }
+            b.append(',').append(' ');
+        }
+    }
+}
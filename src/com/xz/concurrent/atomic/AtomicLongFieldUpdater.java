@@ -0,0 +1,258 @@
+package com.xz.concurrent.atomic;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.security.AccessController;
+import java.security.PrivilegedActionException;
+import java.security.PrivilegedExceptionAction;
+import java.util.Objects;
+import java.util.function.LongBinaryOperator;
+import java.util.function.LongUnaryOperator;
+
+import sun.reflect.CallerSensitive;
+import sun.reflect.Reflection;
+
+/**
+ * 基于反射的工具:对指定类的volatile long字段进行原子更新 与AtomicIntegerFieldUpdater相同
+ * 比每个对象一个AtomicLong少一个对象头和一次间接访问
+ * 类型检查先比较obj.getClass() == cclass 不相同时才调用isInstance()
+ */
+public abstract class AtomicLongFieldUpdater<T> {
+
+    /**
+     * @param tclass 属性所在类的Class对象
+     * @param fieldName 属性的名称
+     */
+    @CallerSensitive
+    public static <U> AtomicLongFieldUpdater<U> newUpdater(Class<U> tclass, String fieldName) {
+        return new AtomicLongFieldUpdaterImpl<U>(tclass, fieldName, Reflection.getCallerClass());
+    }
+
+    protected AtomicLongFieldUpdater() {
+    }
+
+    public abstract boolean compareAndSet(T obj, long expect, long update);
+
+    public abstract boolean weakCompareAndSet(T obj, long expect, long update);
+
+    public abstract void set(T obj, long newValue);
+
+    public abstract void lazySet(T obj, long newValue);
+
+    public abstract long get(T obj);
+
+    public long getAndSet(T obj, long newValue) {
+        long prev;
+        do {
+            prev = get(obj);
+        }
+        while (!compareAndSet(obj, prev, newValue));
+        return prev;
+    }
+
+    public long getAndAdd(T obj, long delta) {
+        long prev;
+        do {
+            prev = get(obj);
+        }
+        while (!compareAndSet(obj, prev, prev + delta));
+        return prev;
+    }
+
+    public long getAndIncrement(T obj) {
+        return getAndAdd(obj, 1L);
+    }
+
+    public long getAndDecrement(T obj) {
+        return getAndAdd(obj, -1L);
+    }
+
+    public long incrementAndGet(T obj) {
+        return getAndAdd(obj, 1L) + 1L;
+    }
+
+    public long decrementAndGet(T obj) {
+        return getAndAdd(obj, -1L) - 1L;
+    }
+
+    public long addAndGet(T obj, long delta) {
+        return getAndAdd(obj, delta) + delta;
+    }
+
+    public final long getAndUpdate(T obj, LongUnaryOperator updateFunction) {
+        long prev, next;
+        do {
+            prev = get(obj);
+            next = updateFunction.applyAsLong(prev);
+        }
+        while (!compareAndSet(obj, prev, next));
+        return prev;
+    }
+
+    public final long updateAndGet(T obj, LongUnaryOperator updateFunction) {
+        long prev, next;
+        do {
+            prev = get(obj);
+            next = updateFunction.applyAsLong(prev);
+        }
+        while (!compareAndSet(obj, prev, next));
+        return next;
+    }
+
+    public final long getAndAccumulate(T obj, long x, LongBinaryOperator accumulatorFunction) {
+        long prev, next;
+        do {
+            prev = get(obj);
+            next = accumulatorFunction.applyAsLong(prev, x);
+        }
+        while (!compareAndSet(obj, prev, next));
+        return prev;
+    }
+
+    public final long accumulateAndGet(T obj, long x, LongBinaryOperator accumulatorFunction) {
+        long prev, next;
+        do {
+            prev = get(obj);
+            next = accumulatorFunction.applyAsLong(prev, x);
+        }
+        while (!compareAndSet(obj, prev, next));
+        return next;
+    }
+
+    /**
+     * 实现类 使用Unsafe的8字节CAS
+     */
+    private static final class AtomicLongFieldUpdaterImpl<T> extends AtomicLongFieldUpdater<T> {
+
+        private static final sun.misc.Unsafe U = sun.misc.Unsafe.getUnsafe();
+
+        private final long offset;
+
+        /**
+         * 字段是protected时为调用者类 否则与tclass相同
+         */
+        private final Class<?> cclass;
+
+        private final Class<T> tclass;
+
+        AtomicLongFieldUpdaterImpl(final Class<T> tclass, final String fieldName, final Class<?> caller) {
+            final Field field;
+            final int modifiers;
+            try {
+                field = AccessController.doPrivileged(new PrivilegedExceptionAction<Field>() {
+
+                    @Override
+                    public Field run() throws NoSuchFieldException {
+                        return tclass.getDeclaredField(fieldName);
+                    }
+                });
+                modifiers = field.getModifiers();
+                sun.reflect.misc.ReflectUtil.ensureMemberAccess(caller, tclass, null, modifiers);
+                ClassLoader cl = tclass.getClassLoader();
+                ClassLoader ccl = caller.getClassLoader();
+                if ((ccl != null) && (ccl != cl) && ((cl == null) || !isAncestor(cl, ccl))) {
+                    sun.reflect.misc.ReflectUtil.checkPackageAccess(tclass);
+                }
+            } catch (PrivilegedActionException pae) {
+                throw new RuntimeException(pae.getException());
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+            if (field.getType() != long.class) {
+                throw new IllegalArgumentException("Must be long type");
+            }
+            if (!Modifier.isVolatile(modifiers)) {
+                throw new IllegalArgumentException("Must be volatile type");
+            }
+            cclass = (Modifier.isProtected(modifiers) && tclass.isAssignableFrom(caller) && !isSamePackage(tclass,
+                    caller)) ? caller : tclass;
+            this.tclass = tclass;
+            offset = U.objectFieldOffset(field);
+        }
+
+        private static boolean isAncestor(ClassLoader first, ClassLoader second) {
+            ClassLoader acl = first;
+            do {
+                acl = acl.getParent();
+                if (second == acl) {
+                    return true;
+                }
+            }
+            while (acl != null);
+            return false;
+        }
+
+        private static boolean isSamePackage(Class<?> class1, Class<?> class2) {
+            return class1.getClassLoader() == class2.getClassLoader() && Objects
+                    .equals(getPackageName(class1), getPackageName(class2));
+        }
+
+        private static String getPackageName(Class<?> cls) {
+            String cn = cls.getName();
+            int dot = cn.lastIndexOf('.');
+            return (dot != -1) ? cn.substring(0, dot) : "";
+        }
+
+        /**
+         * 快速路径只比较一次类型指针 子类或者null才走isInstance()
+         */
+        private final void accessCheck(T obj) {
+            if (obj == null || obj.getClass() != cclass) {
+                fullCheck(obj);
+            }
+        }
+
+        private final void fullCheck(T obj) {
+            if (!cclass.isInstance(obj)) {
+                if (cclass == tclass) {
+                    throw new ClassCastException();
+                }
+                throw new RuntimeException(new IllegalAccessException(
+                        "Class " + cclass.getName() + " can not access a protected member of class " + tclass.getName()
+                                + " using an instance of " + obj.getClass().getName()));
+            }
+        }
+
+        @Override
+        public final boolean compareAndSet(T obj, long expect, long update) {
+            accessCheck(obj);
+            return U.compareAndSwapLong(obj, offset, expect, update);
+        }
+
+        @Override
+        public final boolean weakCompareAndSet(T obj, long expect, long update) {
+            accessCheck(obj);
+            return U.compareAndSwapLong(obj, offset, expect, update);
+        }
+
+        @Override
+        public final void set(T obj, long newValue) {
+            accessCheck(obj);
+            U.putLongVolatile(obj, offset, newValue);
+        }
+
+        @Override
+        public final void lazySet(T obj, long newValue) {
+            accessCheck(obj);
+            U.putOrderedLong(obj, offset, newValue);
+        }
+
+        @Override
+        public final long get(T obj) {
+            accessCheck(obj);
+            return U.getLongVolatile(obj, offset);
+        }
+
+        @Override
+        public final long getAndSet(T obj, long newValue) {
+            accessCheck(obj);
+            return U.getAndSetLong(obj, offset, newValue);
+        }
+
+        @Override
+        public final long getAndAdd(T obj, long delta) {
+            accessCheck(obj);
+            return U.getAndAddLong(obj, offset, delta);
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.xz.concurrent.atomic;
+
+/**
+ * 不分配内存的AtomicMarkableReference 引用换成int下标 标记放在最低位 打包到一个long中
+ * 1.AtomicMarkableReference每次修改都要new Pair 这里只CAS一个long 不产生垃圾
+ * 2.word = (下标 << 1) | 标记 NULL_INDEX(-1)表示空
+ * 3.适合Harris-Michael链表的节点放在IndexArena中时 next下标和删除标记一起CAS
+ */
+public class AtomicMarkableIndex implements java.io.Serializable {
+
+    private static final long serialVersionUID = -1871394226047591473L;
+
+    public static final int NULL_INDEX = -1;
+
+    private volatile long word;
+
+    public AtomicMarkableIndex(int initialIndex, boolean initialMark) {
+        word = pack(initialIndex, initialMark);
+    }
+
+    public static long pack(int index, boolean mark) {
+        return ((long) index << 1) | (mark ? 1L : 0L);
+    }
+
+    public static int indexOf(long word) {
+        return (int) (word >> 1);
+    }
+
+    public static boolean isMarked(long word) {
+        return (word & 1L) != 0L;
+    }
+
+    public int getIndex() {
+        return indexOf(word);
+    }
+
+    public boolean isMarked() {
+        return isMarked(word);
+    }
+
+    /**
+     * 原子的获取下标和标记
+     */
+    public int get(boolean[] markHolder) {
+        long w = word;
+        markHolder[ 0 ] = isMarked(w);
+        return indexOf(w);
+    }
+
+    public long getWord() {
+        return word;
+    }
+
+    public boolean compareAndSetWord(long expect, long update) {
+        return UNSAFE.compareAndSwapLong(this, WORD, expect, update);
+    }
+
+    /**
+     * 与AtomicMarkableReference.compareAndSet()相同 新旧值相同时不写入 返回true
+     */
+    public boolean compareAndSet(int expectedIndex, int newIndex, boolean expectedMark, boolean newMark) {
+        long expect = pack(expectedIndex, expectedMark);
+        long update = pack(newIndex, newMark);
+        return word == expect && (expect == update || compareAndSetWord(expect, update));
+    }
+
+    public boolean weakCompareAndSet(int expectedIndex, int newIndex, boolean expectedMark, boolean newMark) {
+        return compareAndSet(expectedIndex, newIndex, expectedMark, newMark);
+    }
+
+    public void set(int newIndex, boolean newMark) {
+        word = pack(newIndex, newMark);
+    }
+
+    /**
+     * 下标等于expectedIndex时设置标记
+     */
+    public boolean attemptMark(int expectedIndex, boolean newMark) {
+        long w = word;
+        return indexOf(w) == expectedIndex && (isMarked(w) == newMark || compareAndSetWord(w, pack(expectedIndex,
+                newMark)));
+    }
+
+    @Override
+    public String toString() {
+        long w = word;
+        return "[index = " + indexOf(w) + ", mark = " + isMarked(w) + "]";
+    }
+
+    private static final sun.misc.Unsafe UNSAFE = sun.misc.Unsafe.getUnsafe();
+
+    private static final long WORD = AtomicMarkableReference.objectFieldOffset(UNSAFE, "word",
+            AtomicMarkableIndex.class);
+}
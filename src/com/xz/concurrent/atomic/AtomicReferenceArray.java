@@ -0,0 +1,166 @@
+package com.xz.concurrent.atomic;
+
+/**
+ * 使用场景:对一组引用进行同步更新 寻址方式与AtomicIntegerArray相同
+ * 内部总是Object[] 避免子类型数组的ArrayStoreException检查
+ */
+
+import java.util.Arrays;
+import java.util.function.BinaryOperator;
+import java.util.function.UnaryOperator;
+
+import sun.misc.Unsafe;
+
+public class AtomicReferenceArray<E> implements java.io.Serializable {
+
+    private static final long serialVersionUID = -6209656149925076980L;
+
+    private static final Unsafe unsafe = Unsafe.getUnsafe();
+
+    private static final int base = unsafe.arrayBaseOffset(Object[].class);
+
+    /**
+     * 每个元素的地址偏移量 压缩指针时为4字节 否则为8字节
+     */
+    private static final int shift;
+
+    private final Object[] array;
+
+    static {
+        int scale = unsafe.arrayIndexScale(Object[].class);
+        if ((scale & (scale - 1)) != 0) {
+            throw new Error("data type scale not a power of two");
+        }
+        shift = 31 - Integer.numberOfLeadingZeros(scale);
+    }
+
+    private long checkedByteOffset(int i) {
+        if (i < 0 || i >= array.length) {
+            throw new IndexOutOfBoundsException("index " + i);
+        }
+        return byteOffset(i);
+    }
+
+    private static long byteOffset(int i) {
+        return ((long) i << shift) + base;
+    }
+
+    public AtomicReferenceArray(int length) {
+        array = new Object[ length ];
+    }
+
+    public AtomicReferenceArray(E[] array) {
+        this.array = Arrays.copyOf(array, array.length, Object[].class);
+    }
+
+    public final int length() {
+        return array.length;
+    }
+
+    public final E get(int i) {
+        return getRaw(checkedByteOffset(i));
+    }
+
+    @SuppressWarnings("unchecked")
+    private E getRaw(long offset) {
+        return (E) unsafe.getObjectVolatile(array, offset);
+    }
+
+    public final void set(int i, E newValue) {
+        unsafe.putObjectVolatile(array, checkedByteOffset(i), newValue);
+    }
+
+    /**
+     * 设置新值：不保证修改元素对其他线程的立即可见性
+     */
+    public final void lazySet(int i, E newValue) {
+        unsafe.putOrderedObject(array, checkedByteOffset(i), newValue);
+    }
+
+    /**
+     * 获取元素并修改元素为新值 返回旧值
+     */
+    @SuppressWarnings("unchecked")
+    public final E getAndSet(int i, E newValue) {
+        return (E) unsafe.getAndSetObject(array, checkedByteOffset(i), newValue);
+    }
+
+    /**
+     * 比较(==)并修改元素 修改成功 ：true 否则返回false
+     */
+    public final boolean compareAndSet(int i, E expect, E update) {
+        return compareAndSetRaw(checkedByteOffset(i), expect, update);
+    }
+
+    private boolean compareAndSetRaw(long offset, E expect, E update) {
+        return unsafe.compareAndSwapObject(array, offset, expect, update);
+    }
+
+    /**
+     * 同上
+     */
+    public final boolean weakCompareAndSet(int i, E expect, E update) {
+        return compareAndSet(i, expect, update);
+    }
+
+    public final E getAndUpdate(int i, UnaryOperator<E> updateFunction) {
+        long offset = checkedByteOffset(i);
+        E prev, next;
+        do {
+            prev = getRaw(offset);
+            next = updateFunction.apply(prev);
+        }
+        while (!compareAndSetRaw(offset, prev, next));
+        return prev;
+    }
+
+    public final E updateAndGet(int i, UnaryOperator<E> updateFunction) {
+        long offset = checkedByteOffset(i);
+        E prev, next;
+        do {
+            prev = getRaw(offset);
+            next = updateFunction.apply(prev);
+        }
+        while (!compareAndSetRaw(offset, prev, next));
+        return next;
+    }
+
+    public final E getAndAccumulate(int i, E x, BinaryOperator<E> accumulatorFunction) {
+        long offset = checkedByteOffset(i);
+        E prev, next;
+        do {
+            prev = getRaw(offset);
+            next = accumulatorFunction.apply(prev, x);
+        }
+        while (!compareAndSetRaw(offset, prev, next));
+        return prev;
+    }
+
+    public final E accumulateAndGet(int i, E x, BinaryOperator<E> accumulatorFunction) {
+        long offset = checkedByteOffset(i);
+        E prev, next;
+        do {
+            prev = getRaw(offset);
+            next = accumulatorFunction.apply(prev, x);
+        }
+        while (!compareAndSetRaw(offset, prev, next));
+        return next;
+    }
+
+    @Override
+    public String toString() {
+        int iMax = array.length - 1;
+        if (iMax == -1) {
+            return "[]";
+        }
+        StringBuilder b = new StringBuilder();
+        b.append('[');
+        for (int i = 0; ; i++) {
+            b.append(getRaw(byteOffset(i)));
+            if (i == iMax) {
+                return b.append(']').toString();
+            }
+            b.append(',').append(' ');
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.xz.concurrent.atomic;
+
+/**
+ * 不分配内存的AtomicStampedReference 引用换成int下标(例如IndexArena的槽位) 与版本号打包到一个long中
+ * 1.AtomicStampedReference每次修改都要new Pair 这里只CAS一个long 不产生垃圾
+ * 2.高32位：版本号 低32位：下标 NULL_INDEX(-1)表示空
+ * 3.getWord()/compareAndSetWord()直接操作打包后的值 一次volatile读取同时得到下标和版本号
+ * 例如无锁栈：w = getWord() ... compareAndSetWord(w, pack(newIndex, stampOf(w) + 1))
+ */
+public class AtomicStampedIndex implements java.io.Serializable {
+
+    private static final long serialVersionUID = 6203584926735823561L;
+
+    public static final int NULL_INDEX = -1;
+
+    private volatile long word;
+
+    public AtomicStampedIndex(int initialIndex, int initialStamp) {
+        word = pack(initialIndex, initialStamp);
+    }
+
+    /**
+     * 空下标 版本号0
+     */
+    public AtomicStampedIndex() {
+        this(NULL_INDEX, 0);
+    }
+
+    public static long pack(int index, int stamp) {
+        return ((long) stamp << 32) | (index & 0xFFFFFFFFL);
+    }
+
+    public static int indexOf(long word) {
+        return (int) word;
+    }
+
+    public static int stampOf(long word) {
+        return (int) (word >>> 32);
+    }
+
+    public int getIndex() {
+        return (int) word;
+    }
+
+    public int getStamp() {
+        return (int) (word >>> 32);
+    }
+
+    /**
+     * 原子的获取下标和版本号
+     */
+    public int get(int[] stampHolder) {
+        long w = word;
+        stampHolder[ 0 ] = stampOf(w);
+        return indexOf(w);
+    }
+
+    public long getWord() {
+        return word;
+    }
+
+    public boolean compareAndSetWord(long expect, long update) {
+        return UNSAFE.compareAndSwapLong(this, WORD, expect, update);
+    }
+
+    /**
+     * 与AtomicStampedReference.compareAndSet()相同 新旧值相同时不写入 返回true
+     */
+    public boolean compareAndSet(int expectedIndex, int newIndex, int expectedStamp, int newStamp) {
+        long expect = pack(expectedIndex, expectedStamp);
+        long update = pack(newIndex, newStamp);
+        long w = word;
+        return w == expect && (expect == update || compareAndSetWord(expect, update));
+    }
+
+    public boolean weakCompareAndSet(int expectedIndex, int newIndex, int expectedStamp, int newStamp) {
+        return compareAndSet(expectedIndex, newIndex, expectedStamp, newStamp);
+    }
+
+    public void set(int newIndex, int newStamp) {
+        word = pack(newIndex, newStamp);
+    }
+
+    /**
+     * 下标等于expectedIndex时设置版本号
+     */
+    public boolean attemptStamp(int expectedIndex, int newStamp) {
+        long w = word;
+        return indexOf(w) == expectedIndex && (stampOf(w) == newStamp || compareAndSetWord(w, pack(expectedIndex,
+                newStamp)));
+    }
+
+    @Override
+    public String toString() {
+        long w = word;
+        return "[index = " + indexOf(w) + ", stamp = " + stampOf(w) + "]";
+    }
+
+    private static final sun.misc.Unsafe UNSAFE = sun.misc.Unsafe.getUnsafe();
+
+    private static final long WORD = AtomicMarkableReference.objectFieldOffset(UNSAFE, "word",
+            AtomicStampedIndex.class);
+}
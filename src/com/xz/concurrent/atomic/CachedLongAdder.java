@@ -0,0 +1,172 @@
+package com.xz.concurrent.atomic;
+
+import java.io.Serializable;
+
+/**
+ * 读优化的LongAdder 维护一个近似的缓存和 适合读取非常频繁的监控计数器
+ * 1.sumCached()只读取一个volatile变量 不遍历Cell[]
+ * 2.缓存和的更新(fold)：
+ * *写线程更新base或者Cell后 若值跨过2^foldShift的整数倍 遍历一次Cell[]重新计算缓存和
+ * 每个计数单元大约每2^foldShift次更新触发一次 遍历的开销被均摊
+ * *sumCached(maxAgeNanos)：缓存比maxAgeNanos旧时由读线程计算 没有写入的计数器也能得到较新的值
+ * *fold()：立即计算
+ * 3.同一时间只有一个线程fold 其他线程直接跳过 不会用旧值覆盖新值
+ * 4.写入仍然是LongAdder的方式 竞争时走Striped64.longAccumulate() 跨越阈值的检测只在快速路径上 只多一次移位比较
+ * 5.sum()仍然是精确遍历
+ */
+public class CachedLongAdder extends LongAdder {
+
+    private static final long serialVersionUID = -2781207357349325617L;
+
+    /**
+     * 默认每1024次更新fold一次
+     */
+    private static final int DEFAULT_FOLD_SHIFT = 10;
+
+    private final int foldShift;
+
+    /**
+     * 缓存和
+     */
+    private transient volatile long cached;
+
+    /**
+     * 上一次fold的时间
+     */
+    private transient volatile long foldNanos;
+
+    /**
+     * 0：空闲 1：正在fold
+     */
+    private transient volatile int folding;
+
+    public CachedLongAdder() {
+        this(DEFAULT_FOLD_SHIFT);
+    }
+
+    /**
+     * @param foldShift 计数单元的值跨过2^foldShift的整数倍时更新缓存和 0表示每次更新都fold
+     */
+    public CachedLongAdder(int foldShift) {
+        if (foldShift < 0 || foldShift > 62) {
+            throw new IllegalArgumentException();
+        }
+        this.foldShift = foldShift;
+        this.foldNanos = System.nanoTime();
+    }
+
+    /**
+     * 与LongAdder.add()相同 成功后检查是否跨过阈值
+     */
+    @Override
+    public void add(long x) {
+        Cell[] as;
+        long b, v;
+        int m;
+        Cell a;
+        if ((as = cells) != null || !casBase(b = base, v = b + x)) {
+            boolean uncontended = true;
+            if (as == null || (m = as.length - 1) < 0 || (a = as[ getProbe() & m ]) == null || !(uncontended = a
+                    .cas(v = a.value, v + x))) {
+                longAccumulate(x, null, uncontended);
+                return;
+            }
+            if (a.flags != 0) {
+                onFlagged(a);
+            }
+            v += x;
+        }
+        if (((v - x) >> foldShift) != (v >> foldShift)) {
+            fold();
+        }
+    }
+
+    /**
+     * 近似和 一次volatile读
+     */
+    public long sumCached() {
+        return cached;
+    }
+
+    /**
+     * 近似和 缓存比maxAgeNanos旧时先fold
+     */
+    public long sumCached(long maxAgeNanos) {
+        if (System.nanoTime() - foldNanos >= maxAgeNanos) {
+            fold();
+        }
+        return cached;
+    }
+
+    /**
+     * 重新计算缓存和 其他线程正在计算时直接返回
+     */
+    public void fold() {
+        if (folding == 0 && UNSAFE.compareAndSwapInt(this, FOLDING, 0, 1)) {
+            try {
+                cached = super.sum();
+                foldNanos = System.nanoTime();
+            } finally {
+                folding = 0;
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        super.reset();
+        fold();
+    }
+
+    @Override
+    public long sumThenReset() {
+        long sum = super.sumThenReset();
+        fold();
+        return sum;
+    }
+
+    /**
+     * 序列化为当前和 反序列化时重新计算缓存和
+     */
+    private static class SerializationProxy implements Serializable {
+
+        private static final long serialVersionUID = -2781207357349325617L;
+
+        private final long value;
+
+        private final int foldShift;
+
+        SerializationProxy(CachedLongAdder a) {
+            value = a.sum();
+            foldShift = a.foldShift;
+        }
+
+        private Object readResolve() {
+            CachedLongAdder a = new CachedLongAdder(foldShift);
+            a.base = value;
+            a.cached = value;
+            return a;
+        }
+    }
+
+    private Object writeReplace() {
+        return new SerializationProxy(this);
+    }
+
+    private void readObject(java.io.ObjectInputStream s) throws java.io.InvalidObjectException {
+        throw new java.io.InvalidObjectException("Proxy required");
+    }
+
+    private static final sun.misc.Unsafe UNSAFE;
+
+    private static final long FOLDING;
+
+    static {
+        try {
+            UNSAFE = sun.misc.Unsafe.getUnsafe();
+            FOLDING = UNSAFE.objectFieldOffset(CachedLongAdder.class.getDeclaredField("folding"));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
@@ -51,9 +51,22 @@ public class DoubleAccumulator extends Striped64 implements Serializable {
                             == v || a.cas(v, r))) {
                 doubleAccumulate(x, function, uncontended);
             }
+            else if (a.flags != 0) {
+                onFlagged(a);
+            }
         }
     }
 
+    @Override
+    long combine(long b, long v) {
+        return Double.doubleToRawLongBits(function.applyAsDouble(Double.longBitsToDouble(b), Double.longBitsToDouble(v)));
+    }
+
+    @Override
+    long cellIdentity() {
+        return identity;
+    }
+
     /**
      * Returns the current value.  The returned value is <em>NOT</em>
      * an atomic snapshot; invocation in the absence of concurrent
@@ -31,9 +31,17 @@ public class DoubleAdder extends Striped64 implements Serializable {
                     .cas(v = a.value, Double.doubleToRawLongBits(Double.longBitsToDouble(v) + x)))) {
                 doubleAccumulate(x, null, uncontended);
             }
+            else if (a.flags != 0) {
+                onFlagged(a);
+            }
         }
     }
 
+    @Override
+    long combine(long b, long v) {
+        return Double.doubleToRawLongBits(Double.longBitsToDouble(b) + Double.longBitsToDouble(v));
+    }
+
     /**
      * Returns the current sum.  The returned value is <em>NOT</em> an
      * atomic snapshot; invocation in the absence of concurrent
@@ -0,0 +1,95 @@
+package com.xz.concurrent.atomic;
+
+/**
+ * 固定容量的节点池 节点用int下标表示 配合AtomicStampedIndex/AtomicMarkableIndex实现不产生垃圾的无锁结构
+ * 1.每个槽位有一个值和一个next下标 next在槽位被分配期间由使用者自由使用(链表、栈的后继)
+ * 2.空闲槽位组成无锁栈(Treiber栈) 栈顶是AtomicStampedIndex 每次出栈/入栈版本号+1
+ * 出栈时读到的next可能已经过期(槽位被其他线程分配又释放) 但栈顶的版本号已经改变 CAS失败 没有ABA问题
+ * 3.allocate()/release()只有CAS 不分配内存 池满时allocate()返回NULL_INDEX
+ * 4.释放的槽位可能被立即重用 使用者需要保证释放之后没有线程再通过旧下标访问(或者同样用版本号判断)
+ */
+public class IndexArena<E> {
+
+    public static final int NULL_INDEX = AtomicStampedIndex.NULL_INDEX;
+
+    private final AtomicReferenceArray<E> values;
+
+    private final AtomicIntegerArray next;
+
+    /**
+     * 空闲槽位栈顶
+     */
+    private final AtomicStampedIndex free;
+
+    public IndexArena(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        values = new AtomicReferenceArray<E>(capacity);
+        int[] links = new int[ capacity ];
+        for (int i = 0; i < capacity - 1; i++) {
+            links[ i ] = i + 1;
+        }
+        links[ capacity - 1 ] = NULL_INDEX;
+        next = new AtomicIntegerArray(links);
+        free = new AtomicStampedIndex(0, 0);
+    }
+
+    public int capacity() {
+        return values.length();
+    }
+
+    /**
+     * 分配一个槽位并设置值
+     * @return 槽位下标 池满时返回NULL_INDEX
+     */
+    public int allocate(E value) {
+        for (; ; ) {
+            long w = free.getWord();
+            int i = AtomicStampedIndex.indexOf(w);
+            if (i == NULL_INDEX) {
+                return NULL_INDEX;
+            }
+            int n = next.get(i);
+            if (free.compareAndSetWord(w, AtomicStampedIndex.pack(n, AtomicStampedIndex.stampOf(w) + 1))) {
+                next.lazySet(i, NULL_INDEX);
+                values.set(i, value);
+                return i;
+            }
+        }
+    }
+
+    /**
+     * 释放槽位 清空值
+     */
+    public void release(int index) {
+        values.set(index, null);
+        for (; ; ) {
+            long w = free.getWord();
+            next.set(index, AtomicStampedIndex.indexOf(w));
+            if (free.compareAndSetWord(w, AtomicStampedIndex.pack(index, AtomicStampedIndex.stampOf(w) + 1))) {
+                return;
+            }
+        }
+    }
+
+    public E get(int index) {
+        return values.get(index);
+    }
+
+    public void set(int index, E value) {
+        values.set(index, value);
+    }
+
+    public int getNext(int index) {
+        return next.get(index);
+    }
+
+    public void setNext(int index, int nextIndex) {
+        next.set(index, nextIndex);
+    }
+
+    public boolean compareAndSetNext(int index, int expect, int update) {
+        return next.compareAndSet(index, expect, update);
+    }
+}
@@ -47,9 +47,22 @@ public class LongAccumulator extends Striped64 implements Serializable {
                     (r = function.applyAsLong(v = a.value, x)) == v || a.cas(v, r))) {
                 longAccumulate(x, function, uncontended);
             }
+            else if (a.flags != 0) {
+                onFlagged(a);
+            }
         }
     }
 
+    @Override
+    long combine(long b, long v) {
+        return function.applyAsLong(b, v);
+    }
+
+    @Override
+    long cellIdentity() {
+        return identity;
+    }
+
     /**
      * 将内部所有的零散值通过函数算出一个最终值
      * @return the current value
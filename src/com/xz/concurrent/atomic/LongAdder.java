@@ -40,6 +40,10 @@ public class LongAdder extends Striped64 implements Serializable {
                     .cas(v = a.value, v + x))) {
                 longAccumulate(x, null, uncontended);
             }
+            //Cell被收缩或者被标记为空闲
+            else if (a.flags != 0) {
+                onFlagged(a);
+            }
         }
     }
 
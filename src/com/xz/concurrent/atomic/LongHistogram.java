@@ -0,0 +1,342 @@
+package com.xz.concurrent.atomic;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 并发直方图 对数线性分桶 用于记录延迟等非负整数
+ * 1.分桶：小于2^precisionBits的值每个值一个桶 之后每个2的幂区间再等分为2^(precisionBits-1)个桶
+ * 相对误差不超过2^-(precisionBits-1) 默认precisionBits = 5 误差约6% 桶数(65-precisionBits)*2^(precisionBits-1)
+ * 2.分段：与Striped64相同 按线程的probe选择一组桶(stripe) 只有一组时所有线程在同一组上CAS
+ * CAS失败说明有竞争 advanceProbe()换一组 组数小于CPU数时扩容为两倍 最多NCPU组
+ * 3.record()不分配内存：计算桶下标 一次CAS(失败时getAndAdd) 一次getAndAdd累加sum
+ * 4.snapshot()不重置 snapshotThenReset()逐个桶getAndSet(0) 每个记录只会出现在一次快照中
+ * 5.Snapshot不可变 可以合并 支持count、sum、mean、百分位
+ */
+public class LongHistogram {
+
+    /**
+     * 最多的分组数
+     */
+    private static final int MAX_STRIPES = Integer.highestOneBit((Striped64.NCPU << 1) - 1);
+
+    private final int precisionBits;
+
+    /**
+     * 每个2的幂区间有2^subBits个桶
+     */
+    private final int subBits;
+
+    private final int bucketCount;
+
+    /**
+     * 每组桶 最后一个元素为sum 长度为2的幂
+     */
+    private volatile long[][] stripes;
+
+    /**
+     * 扩容时的自旋锁
+     */
+    private volatile int stripesBusy;
+
+    public LongHistogram() {
+        this(5);
+    }
+
+    /**
+     * @param precisionBits 精度 1-16
+     */
+    public LongHistogram(int precisionBits) {
+        if (precisionBits < 1 || precisionBits > 16) {
+            throw new IllegalArgumentException();
+        }
+        this.precisionBits = precisionBits;
+        this.subBits = precisionBits - 1;
+        this.bucketCount = (65 - precisionBits) << subBits;
+        this.stripes = new long[][] { new long[ bucketCount + 1 ] };
+    }
+
+    /*--------------------------------分桶--------------------------------*/
+
+    /**
+     * 值对应的桶
+     * 小于2^precisionBits：直接作为下标
+     * 否则：e为最高位 shift = e - subBits 取最高位之后的subBits位作为区间内的位置
+     */
+    static int bucketIndex(long value, int subBits) {
+        int e = 63 - Long.numberOfLeadingZeros(value);
+        if (e <= subBits) {
+            return (int) value;
+        }
+        int shift = e - subBits;
+        return ((shift + 1) << subBits) + (int) ((value >>> shift) & ((1 << subBits) - 1));
+    }
+
+    /**
+     * 桶的最小值
+     */
+    static long lowestValue(int index, int subBits) {
+        int shift = (index >>> subBits) - 1;
+        if (shift <= 0) {
+            return index;
+        }
+        return ((long) ((1 << subBits) + (index & ((1 << subBits) - 1)))) << shift;
+    }
+
+    /**
+     * 桶的最大值
+     */
+    static long highestValue(int index, int subBits) {
+        int shift = (index >>> subBits) - 1;
+        if (shift <= 0) {
+            return index;
+        }
+        return lowestValue(index, subBits) + (1L << shift) - 1;
+    }
+
+    /*--------------------------------记录--------------------------------*/
+
+    public void record(long value) {
+        recordValues(value, 1L);
+    }
+
+    /**
+     * 记录count次value
+     */
+    public void recordValues(long value, long count) {
+        if (value < 0L || count < 0L) {
+            throw new IllegalArgumentException();
+        }
+        long offset = offset(bucketIndex(value, subBits));
+        long[][] ss = stripes;
+        long[] c = ss[ Striped64.getProbe() & (ss.length - 1) ];
+        long v = U.getLongVolatile(c, offset);
+        if (!U.compareAndSwapLong(c, offset, v, v + count)) {
+            U.getAndAddLong(c, offset, count);
+            contended(ss);
+        }
+        U.getAndAddLong(c, offset(bucketCount), value * count);
+    }
+
+    /**
+     * 发生竞争 更换probe 尝试扩容
+     */
+    private void contended(long[][] ss) {
+        int h = Striped64.getProbe();
+        if (h == 0) {
+            ThreadLocalRandom.current();
+        }
+        else {
+            Striped64.advanceProbe(h);
+        }
+        int n = ss.length;
+        if (n < MAX_STRIPES && stripes == ss && stripesBusy == 0 && U.compareAndSwapInt(this, BUSY, 0, 1)) {
+            try {
+                if (stripes == ss) {
+                    long[][] rs = Arrays.copyOf(ss, n << 1);
+                    for (int i = n; i < rs.length; i++) {
+                        rs[ i ] = new long[ bucketCount + 1 ];
+                    }
+                    stripes = rs;
+                }
+            } finally {
+                stripesBusy = 0;
+            }
+        }
+    }
+
+    /**
+     * 把其他直方图的当前值加到这个直方图中 精度必须相同
+     */
+    public void merge(LongHistogram other) {
+        add(other.snapshot());
+    }
+
+    /**
+     * 把快照加到这个直方图中 精度必须相同
+     */
+    public void add(Snapshot s) {
+        if (s.precisionBits != precisionBits) {
+            throw new IllegalArgumentException("precision mismatch");
+        }
+        long[] c = stripes[ 0 ];
+        long[] counts = s.counts;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[ i ] != 0L) {
+                U.getAndAddLong(c, offset(i), counts[ i ]);
+            }
+        }
+        U.getAndAddLong(c, offset(bucketCount), s.sum);
+    }
+
+    /*--------------------------------读取--------------------------------*/
+
+    /**
+     * 当前值的快照 不是原子快照 并发记录可能部分包含
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[ bucketCount ];
+        long sum = 0L;
+        for (long[] c : stripes) {
+            for (int i = 0; i < bucketCount; i++) {
+                counts[ i ] += U.getLongVolatile(c, offset(i));
+            }
+            sum += U.getLongVolatile(c, offset(bucketCount));
+        }
+        return new Snapshot(precisionBits, counts, sum);
+    }
+
+    /**
+     * 快照并清零 每个桶原子的取出并置0 记录不会丢失也不会重复
+     * 同一条记录的count和sum可能分在前后两次快照中
+     */
+    public Snapshot snapshotThenReset() {
+        long[] counts = new long[ bucketCount ];
+        long sum = 0L;
+        for (long[] c : stripes) {
+            for (int i = 0; i < bucketCount; i++) {
+                if (U.getLongVolatile(c, offset(i)) != 0L) {
+                    counts[ i ] += U.getAndSetLong(c, offset(i), 0L);
+                }
+            }
+            sum += U.getAndSetLong(c, offset(bucketCount), 0L);
+        }
+        return new Snapshot(precisionBits, counts, sum);
+    }
+
+    public int getPrecisionBits() {
+        return precisionBits;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    /**
+     * 直方图快照 不可变
+     */
+    public static final class Snapshot {
+
+        final int precisionBits;
+
+        final long[] counts;
+
+        final long sum;
+
+        private final long count;
+
+        Snapshot(int precisionBits, long[] counts, long sum) {
+            this.precisionBits = precisionBits;
+            this.counts = counts;
+            this.sum = sum;
+            long n = 0L;
+            for (long c : counts) {
+                n += c;
+            }
+            this.count = n;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public double getMean() {
+            return count == 0L ? 0.0 : (double) sum / count;
+        }
+
+        /**
+         * 最小值所在桶的最小值 没有记录返回0
+         */
+        public long getMin() {
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[ i ] != 0L) {
+                    return lowestValue(i, precisionBits - 1);
+                }
+            }
+            return 0L;
+        }
+
+        /**
+         * 最大值所在桶的最大值 没有记录返回0
+         */
+        public long getMax() {
+            for (int i = counts.length - 1; i >= 0; i--) {
+                if (counts[ i ] != 0L) {
+                    return highestValue(i, precisionBits - 1);
+                }
+            }
+            return 0L;
+        }
+
+        /**
+         * 百分位 返回第ceil(count * percentile / 100)个值所在桶的最大值
+         * @param percentile 0-100
+         */
+        public long getValueAtPercentile(double percentile) {
+            if (percentile < 0.0 || percentile > 100.0) {
+                throw new IllegalArgumentException();
+            }
+            if (count == 0L) {
+                return 0L;
+            }
+            long rank = Math.max(1L, (long) Math.ceil(count * (percentile / 100.0)));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                if ((seen += counts[ i ]) >= rank) {
+                    return highestValue(i, precisionBits - 1);
+                }
+            }
+            return getMax();
+        }
+
+        /**
+         * 合并两个快照 精度必须相同
+         */
+        public Snapshot merge(Snapshot other) {
+            if (other.precisionBits != precisionBits) {
+                throw new IllegalArgumentException("precision mismatch");
+            }
+            long[] c = counts.clone();
+            for (int i = 0; i < c.length; i++) {
+                c[ i ] += other.counts[ i ];
+            }
+            return new Snapshot(precisionBits, c, sum + other.sum);
+        }
+
+        @Override
+        public String toString() {
+            return "[count = " + count + ", mean = " + getMean() + ", p50 = " + getValueAtPercentile(50.0) + ", p99 = "
+                    + getValueAtPercentile(99.0) + ", max = " + getMax() + "]";
+        }
+    }
+
+    /*-------------------------------------------CAS操作---------------------------------------------*/
+
+    private static long offset(int index) {
+        return ABASE + ((long) index << ASHIFT);
+    }
+
+    private static final sun.misc.Unsafe U;
+
+    private static final long BUSY;
+
+    private static final long ABASE;
+
+    private static final int ASHIFT;
+
+    static {
+        try {
+            U = sun.misc.Unsafe.getUnsafe();
+            BUSY = U.objectFieldOffset(LongHistogram.class.getDeclaredField("stripesBusy"));
+            ABASE = U.arrayBaseOffset(long[].class);
+            ASHIFT = 31 - Integer.numberOfLeadingZeros(U.arrayIndexScale(long[].class));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.xz.concurrent.atomic;
+
+import sun.misc.Unsafe;
+
+/**
+ * 填充的AtomicIntegerArray 每个元素独占128字节(与@Contended的默认填充宽度相同 覆盖相邻缓存行预取)
+ * 1.适合少量被不同线程频繁更新的相邻元素 例如每个工作线程一个计数器 避免伪共享
+ * 2.第i个元素存放在(i + 1) * STRIDE 数组首尾各留一个STRIDE 不会和数组头以及相邻对象共享缓存行
+ * 3.内存是AtomicIntegerArray的32倍 大数组使用AtomicIntegerArray
+ */
+public class PaddedAtomicIntegerArray implements java.io.Serializable {
+
+    private static final long serialVersionUID = -3424380183287325386L;
+
+    private static final Unsafe unsafe = Unsafe.getUnsafe();
+
+    private static final int base = unsafe.arrayBaseOffset(int[].class);
+
+    /**
+     * 每个元素占用2^STRIDE_SHIFT个int
+     */
+    private static final int STRIDE_SHIFT;
+
+    private static final int shift;
+
+    private final int[] array;
+
+    private final int length;
+
+    static {
+        int scale = unsafe.arrayIndexScale(int[].class);
+        if ((scale & (scale - 1)) != 0) {
+            throw new Error("data type scale not a power of two");
+        }
+        shift = 31 - Integer.numberOfLeadingZeros(scale);
+        STRIDE_SHIFT = 7 - shift;
+    }
+
+    public PaddedAtomicIntegerArray(int length) {
+        if (length < 0) {
+            throw new NegativeArraySizeException();
+        }
+        //(length + 2) << STRIDE_SHIFT 不能溢出 否则数组比length小 Unsafe会越界读写
+        if (length > (Integer.MAX_VALUE >> STRIDE_SHIFT) - 2) {
+            throw new IllegalArgumentException("length " + length);
+        }
+        this.length = length;
+        this.array = new int[ (length + 2) << STRIDE_SHIFT ];
+    }
+
+    private long checkedByteOffset(int i) {
+        if (i < 0 || i >= length) {
+            throw new IndexOutOfBoundsException("index " + i);
+        }
+        return byteOffset(i);
+    }
+
+    private static long byteOffset(int i) {
+        return ((long) (i + 1) << (STRIDE_SHIFT + shift)) + base;
+    }
+
+    public final int length() {
+        return length;
+    }
+
+    public final int get(int i) {
+        return unsafe.getIntVolatile(array, checkedByteOffset(i));
+    }
+
+    public final void set(int i, int newValue) {
+        unsafe.putIntVolatile(array, checkedByteOffset(i), newValue);
+    }
+
+    public final void lazySet(int i, int newValue) {
+        unsafe.putOrderedInt(array, checkedByteOffset(i), newValue);
+    }
+
+    public final int getAndSet(int i, int newValue) {
+        return unsafe.getAndSetInt(array, checkedByteOffset(i), newValue);
+    }
+
+    public final boolean compareAndSet(int i, int expect, int update) {
+        return unsafe.compareAndSwapInt(array, checkedByteOffset(i), expect, update);
+    }
+
+    public final int getAndAdd(int i, int delta) {
+        return unsafe.getAndAddInt(array, checkedByteOffset(i), delta);
+    }
+
+    public final int getAndIncrement(int i) {
+        return getAndAdd(i, 1);
+    }
+
+    public final int getAndDecrement(int i) {
+        return getAndAdd(i, -1);
+    }
+
+    public final int addAndGet(int i, int delta) {
+        return getAndAdd(i, delta) + delta;
+    }
+
+    public final int incrementAndGet(int i) {
+        return getAndAdd(i, 1) + 1;
+    }
+
+    public final int decrementAndGet(int i) {
+        return getAndAdd(i, -1) - 1;
+    }
+
+    /*--------------------------------批量操作 内存语义同AtomicIntegerArray--------------------------------*/
+
+    /**
+     * 复制到dest 每个元素不会撕裂 不是原子快照
+     */
+    public final int[] snapshot(int[] dest) {
+        if (dest.length < length) {
+            throw new IndexOutOfBoundsException("length " + dest.length);
+        }
+        unsafe.loadFence();
+        for (int i = 0; i < length; i++) {
+            dest[ i ] = array[ (i + 1) << STRIDE_SHIFT ];
+        }
+        return dest;
+    }
+
+    public final long sum() {
+        unsafe.loadFence();
+        long sum = 0L;
+        for (int i = 0; i < length; i++) {
+            sum += array[ (i + 1) << STRIDE_SHIFT ];
+        }
+        return sum;
+    }
+
+    /**
+     * 求和并置0 每个元素一次getAndSet 并发的增加不会丢失
+     */
+    public final long sumThenReset() {
+        long sum = 0L;
+        for (int i = 0; i < length; i++) {
+            sum += unsafe.getAndSetInt(array, byteOffset(i), 0);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return java.util.Arrays.toString(snapshot(new int[ length ]));
+    }
+}
@@ -0,0 +1,153 @@
+package com.xz.concurrent.atomic;
+
+import sun.misc.Unsafe;
+
+/**
+ * 填充的AtomicLongArray 每个元素独占128字节 布局与PaddedAtomicIntegerArray相同
+ * 1.适合每个工作线程一个计数器：线程i只更新元素i 不同线程的更新不会互相使对方的缓存行失效
+ * 2.不填充时8个相邻的long在同一缓存行 多个线程同时更新时缓存行在CPU之间来回传递
+ * 3.内存是AtomicLongArray的16倍
+ */
+public class PaddedAtomicLongArray implements java.io.Serializable {
+
+    private static final long serialVersionUID = 4718294873164730262L;
+
+    private static final Unsafe unsafe = Unsafe.getUnsafe();
+
+    private static final int base = unsafe.arrayBaseOffset(long[].class);
+
+    /**
+     * 每个元素占用2^STRIDE_SHIFT个long
+     */
+    private static final int STRIDE_SHIFT;
+
+    private static final int shift;
+
+    private final long[] array;
+
+    private final int length;
+
+    static {
+        int scale = unsafe.arrayIndexScale(long[].class);
+        if ((scale & (scale - 1)) != 0) {
+            throw new Error("data type scale not a power of two");
+        }
+        shift = 31 - Integer.numberOfLeadingZeros(scale);
+        STRIDE_SHIFT = 7 - shift;
+    }
+
+    public PaddedAtomicLongArray(int length) {
+        if (length < 0) {
+            throw new NegativeArraySizeException();
+        }
+        //(length + 2) << STRIDE_SHIFT 不能溢出 否则数组比length小 Unsafe会越界读写
+        if (length > (Integer.MAX_VALUE >> STRIDE_SHIFT) - 2) {
+            throw new IllegalArgumentException("length " + length);
+        }
+        this.length = length;
+        this.array = new long[ (length + 2) << STRIDE_SHIFT ];
+    }
+
+    private long checkedByteOffset(int i) {
+        if (i < 0 || i >= length) {
+            throw new IndexOutOfBoundsException("index " + i);
+        }
+        return byteOffset(i);
+    }
+
+    private static long byteOffset(int i) {
+        return ((long) (i + 1) << (STRIDE_SHIFT + shift)) + base;
+    }
+
+    public final int length() {
+        return length;
+    }
+
+    public final long get(int i) {
+        return unsafe.getLongVolatile(array, checkedByteOffset(i));
+    }
+
+    public final void set(int i, long newValue) {
+        unsafe.putLongVolatile(array, checkedByteOffset(i), newValue);
+    }
+
+    public final void lazySet(int i, long newValue) {
+        unsafe.putOrderedLong(array, checkedByteOffset(i), newValue);
+    }
+
+    public final long getAndSet(int i, long newValue) {
+        return unsafe.getAndSetLong(array, checkedByteOffset(i), newValue);
+    }
+
+    public final boolean compareAndSet(int i, long expect, long update) {
+        return unsafe.compareAndSwapLong(array, checkedByteOffset(i), expect, update);
+    }
+
+    public final long getAndAdd(int i, long delta) {
+        return unsafe.getAndAddLong(array, checkedByteOffset(i), delta);
+    }
+
+    public final long getAndIncrement(int i) {
+        return getAndAdd(i, 1L);
+    }
+
+    public final long getAndDecrement(int i) {
+        return getAndAdd(i, -1L);
+    }
+
+    public final long addAndGet(int i, long delta) {
+        return getAndAdd(i, delta) + delta;
+    }
+
+    public final long incrementAndGet(int i) {
+        return getAndAdd(i, 1L) + 1L;
+    }
+
+    public final long decrementAndGet(int i) {
+        return getAndAdd(i, -1L) - 1L;
+    }
+
+    /*--------------------------------批量操作--------------------------------*/
+
+    /**
+     * 逐个元素getLongVolatile 32位JVM上普通long读取可能撕裂(JLS 17.7) volatile读不会
+     * 元素之间跨度128字节 本来就不能向量化 volatile读在x86-64上也是普通的mov
+     * 不是原子快照 并发的写入可能读到也可能读不到
+     */
+    public final long[] snapshot(long[] dest) {
+        if (dest.length < length) {
+            throw new IndexOutOfBoundsException("length " + dest.length);
+        }
+        for (int i = 0; i < length; i++) {
+            dest[ i ] = unsafe.getLongVolatile(array, byteOffset(i));
+        }
+        return dest;
+    }
+
+    /**
+     * 所有元素的和 内存语义同snapshot()
+     */
+    public final long sum() {
+        long sum = 0L;
+        for (int i = 0; i < length; i++) {
+            sum += unsafe.getLongVolatile(array, byteOffset(i));
+        }
+        return sum;
+    }
+
+    /**
+     * 求和并置0 每个元素一次getAndSet 并发的增加不会丢失
+     */
+    public final long sumThenReset() {
+        long sum = 0L;
+        for (int i = 0; i < length; i++) {
+            sum += unsafe.getAndSetLong(array, byteOffset(i), 0L);
+        }
+        return sum;
+    }
+
+    @Override
+    public String toString() {
+        return java.util.Arrays.toString(snapshot(new long[ length ]));
+    }
+}
@@ -23,6 +23,13 @@ abstract class Striped64 extends Number {
         //原子操作-计数变量 - 为该变量提供CAS操作
         volatile long value;
 
+        /**
+         * RETIRED：已经从cells中移除(收缩) 写入成功后由写线程把值转移到base
+         * IDLE：shrinkIfIdle()标记 写入成功后由写线程清除 下一次检查时仍然存在说明这段时间没有写入
+         * 写线程CAS value成功后读一次flags 为0时没有额外开销
+         */
+        volatile int flags;
+
         //构造方法
         Cell(long x) {
             value = x;
@@ -33,17 +40,24 @@ abstract class Striped64 extends Number {
             return UNSAFE.compareAndSwapLong(this, valueOffset, cmp, val);
         }
 
+        final boolean casFlags(int cmp, int val) {
+            return UNSAFE.compareAndSwapInt(this, flagsOffset, cmp, val);
+        }
+
         // Unsafe mechanics
         private static final sun.misc.Unsafe UNSAFE;
 
         //value属性的内存偏移量
         private static final long valueOffset;
 
+        private static final long flagsOffset;
+
         static {
             try {
                 UNSAFE = sun.misc.Unsafe.getUnsafe();
                 Class<?> ak = Striped64.Cell.class;
                 valueOffset = UNSAFE.objectFieldOffset(ak.getDeclaredField("value"));
+                flagsOffset = UNSAFE.objectFieldOffset(ak.getDeclaredField("flags"));
             } catch (Exception e) {
                 throw new Error(e);
             }
@@ -74,6 +88,23 @@ abstract class Striped64 extends Number {
      */
     transient volatile int cellsBusy;
 
+    static final int RETIRED = 1;
+
+    static final int IDLE = 2;
+
+    /**
+     * 空闲收缩：shrinkIfIdle()两次检查之间的最小间隔 所有Cell在这段时间内都没有写入才收缩
+     * -Dcom.xz.concurrent.atomic.idleShrinkMillis 默认1000 小于等于0关闭空闲收缩
+     */
+    static final long IDLE_SHRINK_NANOS = Long.getLong("com.xz.concurrent.atomic.idleShrinkMillis", 1000L) * 1000000L;
+
+    /**
+     * 上一次标记IDLE的时间和当时的cells
+     */
+    private transient volatile long idleMarkNanos;
+
+    private transient volatile Striped64.Cell[] idleMarkCells;
+
     /**
      * 无参构造
      */
@@ -144,6 +175,126 @@ abstract class Striped64 extends Number {
         return probe;
     }
 
+    /*--------------------------------收缩--------------------------------*/
+
+    /**
+     * 把Cell的值合并到base 子类按自己的运算重写 默认为long加法
+     */
+    long combine(long b, long v) {
+        return b + v;
+    }
+
+    /**
+     * Cell的初始值 合并后Cell被重置为该值
+     */
+    long cellIdentity() {
+        return 0L;
+    }
+
+    /**
+     * 写线程CAS成功后发现flags不为0时调用
+     * RETIRED：转移自己写入的值 IDLE：清除标记 与收缩线程的RETIRED标记竞争时重新检查
+     */
+    final void onFlagged(Striped64.Cell a) {
+        for (int f; (f = a.flags) != 0; ) {
+            if ((f & RETIRED) != 0) {
+                drainRetired(a);
+                return;
+            }
+            if (a.casFlags(f, 0)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 把已经移除的Cell的值转移到base Cell重置为初始值
+     * 收缩线程和写线程都可能调用 CAS保证每个值只转移一次
+     */
+    final void drainRetired(Striped64.Cell a) {
+        long identity = cellIdentity();
+        long v, b;
+        while ((v = a.value) != identity) {
+            if (a.cas(v, identity)) {
+                while (!casBase(b = base, combine(b, v))) {
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 收缩：把所有Cell合并回base 之后cells为null 没有竞争时只使用base 再次竞争时重新创建cells
+     * 1.持有cellsBusy 先标记RETIRED再转移值 之后写入该Cell的线程会看到RETIRED 自己转移
+     * 收缩线程写flags后读value 写线程CAS value后读flags 两边都是volatile 不会有值留在移除的Cell中
+     * 2.与写入并发是安全的 但转移过程中并发的sum()/get()可能少算正在转移的值
+     * 只应在没有读取依赖精确和的时候调用 sum()/get()本身从不收缩
+     * @return 是否收缩
+     */
+    public final boolean shrink() {
+        Striped64.Cell[] as = cells;
+        if (as == null || cellsBusy != 0 || !casCellsBusy()) {
+            return false;
+        }
+        try {
+            if (cells != as) {
+                return false;
+            }
+            for (int i = 0; i < as.length; ++i) {
+                Striped64.Cell a = as[ i ];
+                if (a != null) {
+                    int f;
+                    while (((f = a.flags) & RETIRED) == 0 && !a.casFlags(f, f | RETIRED)) {
+                    }
+                    drainRetired(a);
+                }
+            }
+            cells = null;
+            idleMarkCells = null;
+        } finally {
+            cellsBusy = 0;
+        }
+        return true;
+    }
+
+    /**
+     * 空闲时收缩 由使用者定期调用(例如监控的定时任务) 语义同shrink()
+     * 1.第一次调用给所有Cell打上IDLE标记
+     * 2.至少IDLE_SHRINK_NANOS之后再次调用 所有Cell的IDLE仍在(没有任何写入清除它) 则收缩
+     * 否则重新标记 快速路径上的写入同样会清除标记 忙碌的累加器不会被收缩
+     * @return 是否收缩
+     */
+    public final boolean shrinkIfIdle() {
+        Striped64.Cell[] as = cells;
+        if (as == null || IDLE_SHRINK_NANOS <= 0L) {
+            return false;
+        }
+        long now = System.nanoTime();
+        if (idleMarkCells == as) {
+            if (now - idleMarkNanos < IDLE_SHRINK_NANOS) {
+                return false;
+            }
+            boolean idle = true;
+            for (Striped64.Cell a : as) {
+                if (a != null && a.flags != IDLE) {
+                    idle = false;
+                    break;
+                }
+            }
+            if (idle) {
+                return shrink();
+            }
+        }
+        for (Striped64.Cell a : as) {
+            if (a != null) {
+                a.casFlags(0, IDLE);
+            }
+        }
+        idleMarkNanos = now;
+        idleMarkCells = as;
+        return false;
+    }
+
     /**
      * 此方法建议在外部进行一次CAS操作 cell == null 时，尝试CAS更新Base值，cells != null时，CAS更新hash值取模后对应的cell.value值
      * @param x 外部提供的操作数
@@ -208,6 +359,10 @@ abstract class Striped64 extends Number {
                 }
                 //尝试修改a上的计数 a为Cell数组中index位置上的Cell
                 else if (a.cas(v = a.value, ((fn == null) ? v + x : fn.applyAsLong(v, x)))) {
+                    //cells已经被收缩
+                    if (a.flags != 0) {
+                        onFlagged(a);
+                    }
                     break;
                 }
                 //Cell数组最大为CPU的数量
@@ -314,6 +469,9 @@ abstract class Striped64 extends Number {
                 else if (a.cas(v = a.value, ((fn == null) ?
                         Double.doubleToRawLongBits(Double.longBitsToDouble(v) + x) :
                         Double.doubleToRawLongBits(fn.applyAsDouble(Double.longBitsToDouble(v), x))))) {
+                    if (a.flags != 0) {
+                        onFlagged(a);
+                    }
                     break;
                 }
                 else if (n >= NCPU || cells != as) {
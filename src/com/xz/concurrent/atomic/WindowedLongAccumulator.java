@@ -0,0 +1,154 @@
+package com.xz.concurrent.atomic;
+
+import java.util.function.LongBinaryOperator;
+
+/**
+ * 滑动窗口累加器 窗口由N个时间片组成 每个时间片是一个LongAccumulator(Striped64分段)
+ * 1.accumulate()：一次volatile读取当前时间片 之后与LongAccumulator.accumulate()相同
+ * 2.rotate()：由定时任务调用 切换到下一个时间片 只重置被回收的最旧时间片
+ * *读取从不重置 不会出现getThenReset()在读取和重置之间丢失更新的问题
+ * *切换后仍可能有读到旧下标的线程写入刚关闭的时间片 这些值仍然属于窗口 不会丢失
+ * rotate()返回的是上一次切换时关闭的时间片 已经过一个时间片的宽限 此时的值是稳定的
+ * *至少3个时间片：只有2个时间片时上一次关闭的时间片就是要重置的下一个时间片 返回前已经被清空
+ * 3.get()：合并所有时间片 即最近N个时间片的窗口值
+ * 4.函数需要满足交换律和结合律 例如max、min、sum 不支持last-value(各个Cell之间没有顺序)
+ * 5.同一时间只有一个线程rotate
+ */
+public class WindowedLongAccumulator {
+
+    private final LongBinaryOperator function;
+
+    private final long identity;
+
+    private final LongAccumulator[] slices;
+
+    /**
+     * 当前时间片的下标
+     */
+    private volatile int current;
+
+    /**
+     * 0：空闲 1：正在rotate
+     */
+    private volatile int rotating;
+
+    /**
+     * @param accumulatorFunction 满足交换律和结合律的函数
+     * @param identity 函数的单位元
+     * @param sliceCount 时间片数量 至少3个(当前、刚关闭、上一次关闭的时间片互不相同)
+     */
+    public WindowedLongAccumulator(LongBinaryOperator accumulatorFunction, long identity, int sliceCount) {
+        if (accumulatorFunction == null) {
+            throw new NullPointerException();
+        }
+        if (sliceCount < 3) {
+            throw new IllegalArgumentException();
+        }
+        this.function = accumulatorFunction;
+        this.identity = identity;
+        this.slices = new LongAccumulator[ sliceCount ];
+        for (int i = 0; i < sliceCount; i++) {
+            slices[ i ] = new LongAccumulator(accumulatorFunction, identity);
+        }
+    }
+
+    /**
+     * 窗口最大值
+     */
+    public static WindowedLongAccumulator max(int sliceCount) {
+        return new WindowedLongAccumulator(Math::max, Long.MIN_VALUE, sliceCount);
+    }
+
+    /**
+     * 窗口最小值
+     */
+    public static WindowedLongAccumulator min(int sliceCount) {
+        return new WindowedLongAccumulator(Math::min, Long.MAX_VALUE, sliceCount);
+    }
+
+    /**
+     * 窗口和
+     */
+    public static WindowedLongAccumulator sum(int sliceCount) {
+        return new WindowedLongAccumulator(Long::sum, 0L, sliceCount);
+    }
+
+    public void accumulate(long x) {
+        slices[ current ].accumulate(x);
+    }
+
+    /**
+     * 切换时间片
+     * 1.下一个时间片是最旧的 关闭已经超过N-1个时间片 先重置再发布 N >= 3 所以不会重置要返回的时间片
+     * 2.其他线程正在rotate时直接返回单位元 不会重复切换
+     * @return 上一次切换时关闭的时间片的值
+     */
+    public long rotate() {
+        if (rotating != 0 || !U.compareAndSwapInt(this, ROTATING, 0, 1)) {
+            return identity;
+        }
+        try {
+            int n = slices.length;
+            int c = current;
+            int next = c + 1 == n ? 0 : c + 1;
+            slices[ next ].reset();
+            current = next;
+            return slices[ c == 0 ? n - 1 : c - 1 ].get();
+        } finally {
+            rotating = 0;
+        }
+    }
+
+    /**
+     * 窗口值 合并所有时间片
+     */
+    public long get() {
+        long result = identity;
+        for (LongAccumulator slice : slices) {
+            result = function.applyAsLong(result, slice.get());
+        }
+        return result;
+    }
+
+    /**
+     * @param age 0：当前时间片 1：上一个 最大sliceCount - 1
+     */
+    public long getSlice(int age) {
+        int n = slices.length;
+        if (age < 0 || age >= n) {
+            throw new IndexOutOfBoundsException();
+        }
+        return slices[ (current - age + n) % n ].get();
+    }
+
+    public int getSliceCount() {
+        return slices.length;
+    }
+
+    /**
+     * 重置所有时间片 不是原子操作 并发更新可能保留
+     */
+    public void reset() {
+        for (LongAccumulator slice : slices) {
+            slice.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+
+    private static final sun.misc.Unsafe U;
+
+    private static final long ROTATING;
+
+    static {
+        try {
+            U = sun.misc.Unsafe.getUnsafe();
+            ROTATING = U.objectFieldOffset(WindowedLongAccumulator.class.getDeclaredField("rotating"));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
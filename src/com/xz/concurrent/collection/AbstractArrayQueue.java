@@ -0,0 +1,196 @@
+package com.xz.concurrent.collection;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+
+import com.xz.concurrent.locks.LockSupport;
+
+import sun.misc.Unsafe;
+
+/**
+ * SpscArrayQueue和MpscArrayQueue的公共部分：环形数组、阻塞的put()/take()、批量出队、size()
+ * 1.元素本身作为槽位的状态 null为空闲 生产者putOrderedObject()写入 消费者getObjectVolatile()读取
+ * putOrdered是StoreStore屏障 比volatile写少一次StoreLoad屏障 元素的内容对读到它的消费者可见
+ * 2.下标由子类定义并做缓存行填充 子类只需要实现offer()/poll()和读取下标
+ * 3.只有一个消费者 take()/poll()/drainTo()只能在同一个线程调用
+ */
+abstract class AbstractArrayQueue<E> extends AbstractQueue<E> {
+
+    final Object[] buffer;
+
+    final int mask;
+
+    final WaitStrategy waitStrategy;
+
+    /**
+     * PARK时阻塞的消费者
+     */
+    volatile Thread consumerWaiter;
+
+    AbstractArrayQueue(int capacity, WaitStrategy waitStrategy) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException();
+        }
+        if (waitStrategy == null) {
+            throw new NullPointerException();
+        }
+        int n = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = n - 1;
+        this.buffer = new Object[n];
+        this.waitStrategy = waitStrategy;
+    }
+
+    abstract long lvProducerIndex();
+
+    abstract long lvConsumerIndex();
+
+    static long elementOffset(long index) {
+        return ABASE + (index << ASHIFT);
+    }
+
+    /**
+     * 入队成功后调用 PARK时唤醒阻塞的消费者
+     * 元素是putOrdered写入的 读取consumerWaiter之前需要全屏障 否则和消费者的登记可能互相看不到
+     */
+    final void signalConsumer() {
+        if (waitStrategy == WaitStrategy.PARK) {
+            U.fullFence();
+            Thread w = consumerWaiter;
+            if (w != null) {
+                LockSupport.unpark(w);
+            }
+        }
+    }
+
+    /*--------------------------------阻塞--------------------------------*/
+
+    /**
+     * 入队 队列满时按等待策略等待 响应中断
+     */
+    public void put(E e) throws InterruptedException {
+        for (int n = 0; !offer(e); n++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            waitStrategy.backoff(this, n);
+        }
+    }
+
+    /**
+     * 出队 队列空时按等待策略等待 响应中断
+     * PARK：先登记consumerWaiter 再检查一次队列 仍然为空才阻塞
+     */
+    public E take() throws InterruptedException {
+        E e;
+        for (int n = 0; (e = poll()) == null; n++) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            if (waitStrategy == WaitStrategy.PARK && n >= WaitStrategy.PARK_SPINS) {
+                consumerWaiter = Thread.currentThread();
+                e = poll();
+                if (e == null) {
+                    LockSupport.park(this);
+                }
+                consumerWaiter = null;
+                if (e != null) {
+                    return e;
+                }
+            }
+            else {
+                waitStrategy.idle(n);
+            }
+        }
+        return e;
+    }
+
+    /*--------------------------------批量--------------------------------*/
+
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 批量出队 最多maxElements个
+     */
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int n = 0;
+        E e;
+        while (n < maxElements && (e = poll()) != null) {
+            n++;
+            c.add(e);
+        }
+        return n;
+    }
+
+    /*--------------------------------其他--------------------------------*/
+
+    /**
+     * 两次读取consumerIndex相同时的差值 并发修改时是近似值
+     */
+    @Override
+    public int size() {
+        long after = lvConsumerIndex();
+        for (; ; ) {
+            long before = after;
+            long p = lvProducerIndex();
+            after = lvConsumerIndex();
+            if (before == after) {
+                long size = p - after;
+                return (size < 0L) ? 0 : (size > mask + 1) ? mask + 1 : (int) size;
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return lvConsumerIndex() == lvProducerIndex();
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    /**
+     * 当前已经发布的元素的快照 不支持remove()
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        ArrayList<E> snapshot = new ArrayList<E>();
+        for (long c = lvConsumerIndex(), p = lvProducerIndex(); c < p; c++) {
+            E e = (E) U.getObjectVolatile(buffer, elementOffset(c & mask));
+            if (e != null) {
+                snapshot.add(e);
+            }
+        }
+        final Iterator<E> it = snapshot.iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return it.next();
+            }
+        };
+    }
+
+    /*-------------------------------------------CAS操作---------------------------------------------*/
+
+    static final Unsafe U = Unsafe.getUnsafe();
+
+    private static final long ABASE = U.arrayBaseOffset(Object[].class);
+
+    private static final int ASHIFT = 31 - Integer.numberOfLeadingZeros(U.arrayIndexScale(Object[].class));
+}
@@ -0,0 +1,534 @@
+package com.xz.concurrent.collection;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.xz.concurrent.locks.Condition;
+import com.xz.concurrent.locks.ReentrantLock;
+
+/**
+ * 有界阻塞队列 双锁实现 链表
+ * 1.入队使用putLock 出队使用takeLock 生产者和消费者不竞争同一把锁
+ * 2.count为原子变量 两边通过count判断空和满 head为哑结点 head.next才是第一个元素
+ * 3.级联唤醒：put之后若还有空位 由生产者唤醒下一个生产者 只有队列从空变为非空时才获取takeLock唤醒消费者 反之亦然
+ * 4.drainTo()批量出队 一次获取takeLock 结束后按出队数量signalN()唤醒生产者
+ * 5.迭代器弱一致 每一步同时持有两把锁
+ */
+public class LinkedBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    /**
+     * 链表节点
+     */
+    static class Node<E> {
+
+        E item;
+
+        /**
+         * 后继节点 指向自己表示已经出队 后继为head.next
+         */
+        Node<E> next;
+
+        Node(E x) {
+            item = x;
+        }
+    }
+
+    /**
+     * 容量
+     */
+    private final int capacity;
+
+    /**
+     * 元素数量
+     */
+    private final AtomicInteger count = new AtomicInteger();
+
+    /**
+     * 头结点 head.item == null
+     */
+    transient Node<E> head;
+
+    /**
+     * 尾结点 last.next == null
+     */
+    private transient Node<E> last;
+
+    private final ReentrantLock takeLock = new ReentrantLock();
+
+    private final Condition notEmpty = takeLock.newCondition();
+
+    private final ReentrantLock putLock = new ReentrantLock();
+
+    private final Condition notFull = putLock.newCondition();
+
+    public LinkedBlockingQueue(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException();
+        }
+        this.capacity = capacity;
+        last = head = new Node<E>(null);
+    }
+
+    /*--------------------------------唤醒--------------------------------*/
+
+    /**
+     * 队列从空变为非空 唤醒一个消费者 只在put/offer中调用
+     */
+    private void signalNotEmpty() {
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lock();
+        try {
+            notEmpty.signal();
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    /**
+     * 队列从满变为不满 唤醒n个生产者 只在take/poll/drainTo中调用
+     */
+    private void signalNotFull(int n) {
+        final ReentrantLock putLock = this.putLock;
+        putLock.lock();
+        try {
+            notFull.signalN(n);
+        } finally {
+            putLock.unlock();
+        }
+    }
+
+    /**
+     * 持有putLock
+     */
+    private void enqueue(Node<E> node) {
+        last = last.next = node;
+    }
+
+    /**
+     * 持有takeLock 原来的头结点next指向自己 帮助GC 迭代器据此判断节点已经出队
+     */
+    private E dequeue() {
+        Node<E> h = head;
+        Node<E> first = h.next;
+        h.next = h;
+        head = first;
+        E x = first.item;
+        first.item = null;
+        return x;
+    }
+
+    /**
+     * 同时持有两把锁 迭代器和remove(Object)使用
+     */
+    void fullyLock() {
+        putLock.lock();
+        takeLock.lock();
+    }
+
+    void fullyUnlock() {
+        takeLock.unlock();
+        putLock.unlock();
+    }
+
+    /*--------------------------------入队--------------------------------*/
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        int c;
+        Node<E> node = new Node<E>(e);
+        final ReentrantLock putLock = this.putLock;
+        final AtomicInteger count = this.count;
+        putLock.lockInterruptibly();
+        try {
+            while (count.get() == capacity) {
+                notFull.await();
+            }
+            enqueue(node);
+            c = count.getAndIncrement();
+            //还有空位 级联唤醒下一个生产者
+            if (c + 1 < capacity) {
+                notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (c == 0) {
+            signalNotEmpty();
+        }
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long nanos = unit.toNanos(timeout);
+        int c;
+        final ReentrantLock putLock = this.putLock;
+        final AtomicInteger count = this.count;
+        putLock.lockInterruptibly();
+        try {
+            while (count.get() == capacity) {
+                if (nanos <= 0L) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(new Node<E>(e));
+            c = count.getAndIncrement();
+            if (c + 1 < capacity) {
+                notFull.signal();
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (c == 0) {
+            signalNotEmpty();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        final AtomicInteger count = this.count;
+        //不加锁先检查 队列满时直接返回
+        if (count.get() == capacity) {
+            return false;
+        }
+        int c = -1;
+        final ReentrantLock putLock = this.putLock;
+        putLock.lock();
+        try {
+            if (count.get() < capacity) {
+                enqueue(new Node<E>(e));
+                c = count.getAndIncrement();
+                if (c + 1 < capacity) {
+                    notFull.signal();
+                }
+            }
+        } finally {
+            putLock.unlock();
+        }
+        if (c == 0) {
+            signalNotEmpty();
+        }
+        return c >= 0;
+    }
+
+    /*--------------------------------出队--------------------------------*/
+
+    @Override
+    public E take() throws InterruptedException {
+        E x;
+        int c;
+        final AtomicInteger count = this.count;
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lockInterruptibly();
+        try {
+            while (count.get() == 0) {
+                notEmpty.await();
+            }
+            x = dequeue();
+            c = count.getAndDecrement();
+            //还有元素 级联唤醒下一个消费者
+            if (c > 1) {
+                notEmpty.signal();
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        if (c == capacity) {
+            signalNotFull(1);
+        }
+        return x;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E x;
+        int c;
+        long nanos = unit.toNanos(timeout);
+        final AtomicInteger count = this.count;
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lockInterruptibly();
+        try {
+            while (count.get() == 0) {
+                if (nanos <= 0L) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            x = dequeue();
+            c = count.getAndDecrement();
+            if (c > 1) {
+                notEmpty.signal();
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        if (c == capacity) {
+            signalNotFull(1);
+        }
+        return x;
+    }
+
+    @Override
+    public E poll() {
+        final AtomicInteger count = this.count;
+        if (count.get() == 0) {
+            return null;
+        }
+        E x = null;
+        int c = -1;
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lock();
+        try {
+            if (count.get() > 0) {
+                x = dequeue();
+                c = count.getAndDecrement();
+                if (c > 1) {
+                    notEmpty.signal();
+                }
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        if (c == capacity) {
+            signalNotFull(1);
+        }
+        return x;
+    }
+
+    @Override
+    public E peek() {
+        if (count.get() == 0) {
+            return null;
+        }
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lock();
+        try {
+            return (count.get() > 0) ? head.next.item : null;
+        } finally {
+            takeLock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 批量出队 只获取一次takeLock 出队后一次性唤醒腾出的空位数量的生产者
+     */
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        if (maxElements <= 0) {
+            return 0;
+        }
+        int before = 0;
+        int i = 0;
+        final ReentrantLock takeLock = this.takeLock;
+        takeLock.lock();
+        try {
+            int n = Math.min(maxElements, count.get());
+            Node<E> h = head;
+            try {
+                while (i < n) {
+                    Node<E> p = h.next;
+                    c.add(p.item);
+                    p.item = null;
+                    h.next = h;
+                    h = p;
+                    ++i;
+                }
+            } finally {
+                //c.add()抛出异常时也要保持队列一致
+                if (i > 0) {
+                    head = h;
+                    before = count.getAndAdd(-i);
+                }
+            }
+        } finally {
+            takeLock.unlock();
+        }
+        //出队前队列已满 生产者可能在等待
+        if (i > 0 && before == capacity) {
+            signalNotFull(i);
+        }
+        return i;
+    }
+
+    /*--------------------------------其他--------------------------------*/
+
+    @Override
+    public int size() {
+        return count.get();
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - count.get();
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        fullyLock();
+        try {
+            for (Node<E> trail = head, p = trail.next; p != null; trail = p, p = p.next) {
+                if (o.equals(p.item)) {
+                    p.item = null;
+                    trail.next = p.next;
+                    if (last == p) {
+                        last = trail;
+                    }
+                    if (count.getAndDecrement() == capacity) {
+                        notFull.signal();
+                    }
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) {
+            return false;
+        }
+        fullyLock();
+        try {
+            for (Node<E> p = head.next; p != null; p = p.next) {
+                if (o.equals(p.item)) {
+                    return true;
+                }
+            }
+            return false;
+        } finally {
+            fullyUnlock();
+        }
+    }
+
+    @Override
+    public void clear() {
+        drainTo(new ArrayList<E>());
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr();
+    }
+
+    /**
+     * 弱一致迭代器 保存下一个节点和它的元素 hasNext()不需要加锁
+     */
+    private class Itr implements Iterator<E> {
+
+        private Node<E> current;
+
+        private Node<E> lastRet;
+
+        private E currentElement;
+
+        Itr() {
+            fullyLock();
+            try {
+                current = head.next;
+                if (current != null) {
+                    currentElement = current.item;
+                }
+            } finally {
+                fullyUnlock();
+            }
+        }
+
+        @Override
+        public boolean hasNext() {
+            return current != null;
+        }
+
+        /**
+         * 跳过已经出队(next指向自己)或者被移除(item为null)的节点
+         */
+        private Node<E> nextNode(Node<E> p) {
+            for (; ; ) {
+                Node<E> s = p.next;
+                if (s == p) {
+                    return head.next;
+                }
+                if (s == null || s.item != null) {
+                    return s;
+                }
+                p = s;
+            }
+        }
+
+        @Override
+        public E next() {
+            fullyLock();
+            try {
+                if (current == null) {
+                    throw new NoSuchElementException();
+                }
+                E x = currentElement;
+                lastRet = current;
+                current = nextNode(current);
+                currentElement = (current == null) ? null : current.item;
+                return x;
+            } finally {
+                fullyUnlock();
+            }
+        }
+
+        @Override
+        public void remove() {
+            if (lastRet == null) {
+                throw new IllegalStateException();
+            }
+            fullyLock();
+            try {
+                Node<E> node = lastRet;
+                lastRet = null;
+                for (Node<E> trail = head, p = trail.next; p != null; trail = p, p = p.next) {
+                    if (p == node) {
+                        p.item = null;
+                        trail.next = p.next;
+                        if (last == p) {
+                            last = trail;
+                        }
+                        if (count.getAndDecrement() == capacity) {
+                            notFull.signal();
+                        }
+                        break;
+                    }
+                }
+            } finally {
+                fullyUnlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,550 @@
+package com.xz.concurrent.collection;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BiConsumer;
+
+import com.xz.concurrent.atomic.AtomicMarkableReference;
+
+/**
+ * 无锁跳表 每层的next都是AtomicMarkableReference 标记表示节点在这一层已被删除
+ * 1.查找：从最高层开始 每层找到pred < key <= succ 途中CAS删除已标记的节点
+ * 2.插入：先CAS链入第0层(线性化点) 再逐层向上链入 上层失败时重新查找
+ * 节点在上层链入之前可能已经被删除 发现自己的next已标记就停止
+ * 3.删除：先CAS value为null(线性化点 之后get()返回null) 再从上到下标记每层的next 最后find()物理删除
+ * 4.value为null的节点表示正在删除 put()遇到时帮助标记 等它被删除后再插入
+ * 5.get()/containsKey()只读 跳过已标记的节点 不CAS
+ * 6.不允许null键和null值 迭代器弱一致 支持范围扫描
+ */
+public class LockFreeSkipListMap<K, V> extends AbstractMap<K, V> implements ConcurrentMap<K, V> {
+
+    /**
+     * 最高层 层数为MAX_LEVEL + 1 节点的层数按1/2的概率递增
+     */
+    private static final int MAX_LEVEL = 24;
+
+    private final Comparator<? super K> comparator;
+
+    private final Node<K, V> head;
+
+    private final Node<K, V> tail;
+
+    private transient EntrySet entrySet;
+
+    public LockFreeSkipListMap() {
+        this(null);
+    }
+
+    public LockFreeSkipListMap(Comparator<? super K> comparator) {
+        this.comparator = comparator;
+        this.tail = new Node<K, V>(null, null, MAX_LEVEL);
+        this.head = new Node<K, V>(null, null, MAX_LEVEL);
+        for (int i = 0; i <= MAX_LEVEL; i++) {
+            head.next[ i ] = new AtomicMarkableReference<Node<K, V>>(tail, false);
+        }
+    }
+
+    static final class Node<K, V> {
+
+        final K key;
+
+        volatile V value;
+
+        final AtomicMarkableReference<Node<K, V>>[] next;
+
+        final int topLevel;
+
+        @SuppressWarnings({ "unchecked", "rawtypes" })
+        Node(K key, V value, int topLevel) {
+            this.key = key;
+            this.value = value;
+            this.topLevel = topLevel;
+            this.next = (AtomicMarkableReference<Node<K, V>>[]) new AtomicMarkableReference[ topLevel + 1 ];
+            for (int i = 0; i <= topLevel; i++) {
+                next[ i ] = new AtomicMarkableReference<Node<K, V>>(null, false);
+            }
+        }
+
+        boolean casValue(V expect, V update) {
+            return U.compareAndSwapObject(this, VALUE, expect, update);
+        }
+
+        private static final sun.misc.Unsafe U = sun.misc.Unsafe.getUnsafe();
+
+        private static final long VALUE;
+
+        static {
+            try {
+                VALUE = U.objectFieldOffset(Node.class.getDeclaredField("value"));
+            } catch (Exception e) {
+                throw new Error(e);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object x, K y) {
+        return comparator != null ? comparator.compare((K) x, y) : ((Comparable<? super K>) x).compareTo(y);
+    }
+
+    private static int randomLevel() {
+        int r = ThreadLocalRandom.current().nextInt();
+        int level = 0;
+        while ((r & 1) != 0 && level < MAX_LEVEL) {
+            level++;
+            r >>>= 1;
+        }
+        return level;
+    }
+
+    /*--------------------------------查找--------------------------------*/
+
+    /**
+     * 每层找到preds[i] < key <= succs[i] 途中删除已标记的节点 CAS失败从头重试
+     * @return 第0层的succ的key等于key
+     */
+    private boolean find(Object key, Node<K, V>[] preds, Node<K, V>[] succs) {
+        boolean[] marked = { false };
+        retry:
+        for (; ; ) {
+            Node<K, V> pred = head;
+            Node<K, V> curr = null;
+            for (int level = MAX_LEVEL; level >= 0; level--) {
+                curr = pred.next[ level ].getReference();
+                for (; ; ) {
+                    if (curr == tail) {
+                        break;
+                    }
+                    Node<K, V> succ = curr.next[ level ].get(marked);
+                    while (marked[ 0 ]) {
+                        if (!pred.next[ level ].compareAndSet(curr, succ, false, false)) {
+                            continue retry;
+                        }
+                        curr = succ;
+                        if (curr == tail) {
+                            break;
+                        }
+                        succ = curr.next[ level ].get(marked);
+                    }
+                    if (curr == tail || compare(key, curr.key) <= 0) {
+                        break;
+                    }
+                    pred = curr;
+                    curr = succ;
+                }
+                preds[ level ] = pred;
+                succs[ level ] = curr;
+            }
+            return curr != tail && compare(key, curr.key) == 0;
+        }
+    }
+
+    /**
+     * 只读查找 跳过已标记的节点 返回第一个不小于key的未删除节点 没有返回tail
+     */
+    private Node<K, V> findCeiling(Object key) {
+        boolean[] marked = { false };
+        Node<K, V> pred = head;
+        Node<K, V> curr = null;
+        for (int level = MAX_LEVEL; level >= 0; level--) {
+            curr = pred.next[ level ].getReference();
+            for (; ; ) {
+                if (curr == tail) {
+                    break;
+                }
+                Node<K, V> succ = curr.next[ level ].get(marked);
+                while (marked[ 0 ] && curr != tail) {
+                    curr = succ;
+                    if (curr != tail) {
+                        succ = curr.next[ level ].get(marked);
+                    }
+                }
+                if (curr == tail || compare(key, curr.key) <= 0) {
+                    break;
+                }
+                pred = curr;
+                curr = succ;
+            }
+        }
+        return curr;
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    private static <K, V> Node<K, V>[] newNodeArray() {
+        return (Node<K, V>[]) new Node[ MAX_LEVEL + 1 ];
+    }
+
+    /*--------------------------------读取--------------------------------*/
+
+    @Override
+    public V get(Object key) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        Node<K, V> n = findCeiling(key);
+        return n != tail && compare(key, n.key) == 0 ? n.value : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /*--------------------------------插入--------------------------------*/
+
+    @Override
+    public V put(K key, V value) {
+        return doPut(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return doPut(key, value, true);
+    }
+
+    private V doPut(K key, V value, boolean onlyIfAbsent) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        int topLevel = randomLevel();
+        Node<K, V>[] preds = newNodeArray();
+        Node<K, V>[] succs = newNodeArray();
+        for (; ; ) {
+            if (find(key, preds, succs)) {
+                Node<K, V> n = succs[ 0 ];
+                V v = n.value;
+                if (v == null) {
+                    //正在删除 帮助标记后重新查找
+                    markNode(n);
+                    continue;
+                }
+                if (onlyIfAbsent || n.casValue(v, value)) {
+                    return v;
+                }
+                continue;
+            }
+            Node<K, V> node = new Node<K, V>(key, value, topLevel);
+            for (int level = 0; level <= topLevel; level++) {
+                node.next[ level ].set(succs[ level ], false);
+            }
+            if (!preds[ 0 ].next[ 0 ].compareAndSet(succs[ 0 ], node, false, false)) {
+                continue;
+            }
+            linkUpperLevels(node, preds, succs);
+            return null;
+        }
+    }
+
+    /**
+     * 逐层向上链入 节点已被删除时停止
+     */
+    private void linkUpperLevels(Node<K, V> node, Node<K, V>[] preds, Node<K, V>[] succs) {
+        boolean[] marked = { false };
+        for (int level = 1; level <= node.topLevel; level++) {
+            for (; ; ) {
+                Node<K, V> pred = preds[ level ];
+                Node<K, V> succ = succs[ level ];
+                Node<K, V> curr = node.next[ level ].get(marked);
+                if (marked[ 0 ]) {
+                    return;
+                }
+                if (curr != succ && !node.next[ level ].compareAndSet(curr, succ, false, false)) {
+                    continue;
+                }
+                if (pred.next[ level ].compareAndSet(succ, node, false, false)) {
+                    break;
+                }
+                if (!find(node.key, preds, succs) || succs[ 0 ] != node) {
+                    return;
+                }
+            }
+        }
+    }
+
+    /*--------------------------------删除--------------------------------*/
+
+    @Override
+    public V remove(Object key) {
+        return doRemove(key, null);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        return value != null && doRemove(key, value) != null;
+    }
+
+    private V doRemove(Object key, Object expected) {
+        if (key == null) {
+            throw new NullPointerException();
+        }
+        Node<K, V>[] preds = newNodeArray();
+        Node<K, V>[] succs = newNodeArray();
+        for (; ; ) {
+            if (!find(key, preds, succs)) {
+                return null;
+            }
+            Node<K, V> n = succs[ 0 ];
+            V v = n.value;
+            if (v == null) {
+                //其他线程已经删除
+                markNode(n);
+                find(key, preds, succs);
+                return null;
+            }
+            if (expected != null && !expected.equals(v)) {
+                return null;
+            }
+            if (n.casValue(v, null)) {
+                markNode(n);
+                find(key, preds, succs);
+                return v;
+            }
+        }
+    }
+
+    /**
+     * 从上到下标记每层的next 可以被多个线程重复调用
+     */
+    private void markNode(Node<K, V> n) {
+        boolean[] marked = { false };
+        for (int level = n.topLevel; level >= 0; level--) {
+            Node<K, V> succ = n.next[ level ].get(marked);
+            while (!marked[ 0 ]) {
+                n.next[ level ].attemptMark(succ, true);
+                succ = n.next[ level ].get(marked);
+            }
+        }
+    }
+
+    /*--------------------------------替换--------------------------------*/
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        if (key == null || oldValue == null || newValue == null) {
+            throw new NullPointerException();
+        }
+        Node<K, V> n = findCeiling(key);
+        if (n == tail || compare(key, n.key) != 0) {
+            return false;
+        }
+        for (; ; ) {
+            V v = n.value;
+            if (v == null || !oldValue.equals(v)) {
+                return false;
+            }
+            if (n.casValue(v, newValue)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        if (key == null || value == null) {
+            throw new NullPointerException();
+        }
+        Node<K, V> n = findCeiling(key);
+        if (n == tail || compare(key, n.key) != 0) {
+            return null;
+        }
+        for (; ; ) {
+            V v = n.value;
+            if (v == null || n.casValue(v, value)) {
+                return v;
+            }
+        }
+    }
+
+    /*--------------------------------遍历--------------------------------*/
+
+    /**
+     * 第0层遍历计数 O(n)
+     */
+    @Override
+    public int size() {
+        int count = 0;
+        for (Node<K, V> n = head.next[ 0 ].getReference(); n != tail; n = n.next[ 0 ].getReference()) {
+            if (n.value != null && ++count == Integer.MAX_VALUE) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return !new EntryIterator(null, null).hasNext();
+    }
+
+    @Override
+    public void clear() {
+        Node<K, V> n;
+        while ((n = head.next[ 0 ].getReference()) != tail) {
+            doRemove(n.key, null);
+        }
+    }
+
+    /**
+     * 最小的key 没有返回null
+     */
+    public K firstKey() {
+        EntryIterator it = new EntryIterator(null, null);
+        return it.hasNext() ? it.next().getKey() : null;
+    }
+
+    /**
+     * 大于等于key的最小key 没有返回null
+     */
+    public K ceilingKey(K key) {
+        EntryIterator it = new EntryIterator(key, null);
+        return it.hasNext() ? it.next().getKey() : null;
+    }
+
+    /**
+     * 范围扫描 [fromInclusive, toExclusive) null表示不限制 弱一致
+     */
+    public Iterator<Map.Entry<K, V>> entryIterator(K fromInclusive, K toExclusive) {
+        return new EntryIterator(fromInclusive, toExclusive);
+    }
+
+    /**
+     * 范围扫描 [fromInclusive, toExclusive) 不创建Entry
+     */
+    public void forEachInRange(K fromInclusive, K toExclusive, BiConsumer<? super K, ? super V> action) {
+        if (action == null) {
+            throw new NullPointerException();
+        }
+        Node<K, V> n = fromInclusive == null ? head.next[ 0 ].getReference() : findCeiling(fromInclusive);
+        for (; n != tail; n = n.next[ 0 ].getReference()) {
+            if (toExclusive != null && compare(n.key, toExclusive) >= 0) {
+                break;
+            }
+            V v = n.value;
+            if (v != null) {
+                action.accept(n.key, v);
+            }
+        }
+    }
+
+    @Override
+    public void forEach(BiConsumer<? super K, ? super V> action) {
+        forEachInRange(null, null, action);
+    }
+
+    public Comparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        EntrySet es = entrySet;
+        return es != null ? es : (entrySet = new EntrySet());
+    }
+
+    final class EntrySet extends AbstractSet<Map.Entry<K, V>> {
+
+        @Override
+        public Iterator<Map.Entry<K, V>> iterator() {
+            return new EntryIterator(null, null);
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            V v = e.getKey() == null ? null : get(e.getKey());
+            return v != null && v.equals(e.getValue());
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            if (!(o instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> e = (Map.Entry<?, ?>) o;
+            return e.getKey() != null && LockFreeSkipListMap.this.remove(e.getKey(), e.getValue());
+        }
+
+        @Override
+        public int size() {
+            return LockFreeSkipListMap.this.size();
+        }
+
+        @Override
+        public void clear() {
+            LockFreeSkipListMap.this.clear();
+        }
+    }
+
+    /**
+     * 弱一致迭代器 在第0层遍历 返回不可变的Entry
+     */
+    final class EntryIterator implements Iterator<Map.Entry<K, V>> {
+
+        private final K to;
+
+        private Node<K, V> next;
+
+        private V nextValue;
+
+        private K lastReturned;
+
+        EntryIterator(K from, K to) {
+            this.to = to;
+            advance(from == null ? head.next[ 0 ].getReference() : findCeiling(from));
+        }
+
+        private void advance(Node<K, V> n) {
+            for (; n != tail; n = n.next[ 0 ].getReference()) {
+                if (to != null && compare(n.key, to) >= 0) {
+                    break;
+                }
+                V v = n.value;
+                if (v != null) {
+                    next = n;
+                    nextValue = v;
+                    return;
+                }
+            }
+            next = null;
+            nextValue = null;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            Node<K, V> n = next;
+            if (n == null) {
+                throw new NoSuchElementException();
+            }
+            Map.Entry<K, V> e = new SimpleImmutableEntry<K, V>(n.key, nextValue);
+            lastReturned = n.key;
+            advance(n.next[ 0 ].getReference());
+            return e;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            LockFreeSkipListMap.this.remove(lastReturned);
+            lastReturned = null;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package com.xz.concurrent.collection;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.xz.concurrent.atomic.AtomicMarkableReference;
+
+/**
+ * 无锁有序集合 Harris-Michael链表
+ * 1.每个节点的next是AtomicMarkableReference 标记表示节点已被逻辑删除
+ * 2.remove()：先标记curr.next(逻辑删除 线性化点) 再CAS pred.next跳过curr(物理删除 失败也没关系)
+ * 3.add()/remove()中的find()遇到已标记的节点顺便物理删除 CAS失败从头重试
+ * 4.contains()不修改链表 不重试 wait-free
+ * 5.迭代器弱一致 不抛出ConcurrentModificationException 支持范围迭代
+ * 6.不允许null元素 使用comparator或者自然顺序
+ */
+public class LockFreeSortedSet<E> extends AbstractSet<E> implements Set<E> {
+
+    private final Comparator<? super E> comparator;
+
+    /**
+     * 哨兵 head的元素视为负无穷 tail视为正无穷
+     */
+    private final Node<E> head;
+
+    private final Node<E> tail;
+
+    public LockFreeSortedSet() {
+        this(null);
+    }
+
+    public LockFreeSortedSet(Comparator<? super E> comparator) {
+        this.comparator = comparator;
+        this.tail = new Node<E>(null, null);
+        this.head = new Node<E>(null, tail);
+    }
+
+    static final class Node<E> {
+
+        final E item;
+
+        final AtomicMarkableReference<Node<E>> next;
+
+        Node(E item, Node<E> next) {
+            this.item = item;
+            this.next = new AtomicMarkableReference<Node<E>>(next, false);
+        }
+    }
+
+    /**
+     * find()的结果 pred < key <= curr
+     */
+    static final class Window<E> {
+
+        final Node<E> pred;
+
+        final Node<E> curr;
+
+        Window(Node<E> pred, Node<E> curr) {
+            this.pred = pred;
+            this.curr = curr;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private int compare(Object x, E y) {
+        return comparator != null ? comparator.compare((E) x, y) : ((Comparable<? super E>) x).compareTo(y);
+    }
+
+    /**
+     * 找到第一个不小于key的节点curr和它的前驱pred 途中删除已标记的节点
+     */
+    private Window<E> find(Object key) {
+        boolean[] marked = { false };
+        retry:
+        for (; ; ) {
+            Node<E> pred = head;
+            Node<E> curr = pred.next.getReference();
+            for (; ; ) {
+                if (curr == tail) {
+                    return new Window<E>(pred, curr);
+                }
+                Node<E> succ = curr.next.get(marked);
+                while (marked[ 0 ]) {
+                    if (!pred.next.compareAndSet(curr, succ, false, false)) {
+                        continue retry;
+                    }
+                    curr = succ;
+                    if (curr == tail) {
+                        return new Window<E>(pred, curr);
+                    }
+                    succ = curr.next.get(marked);
+                }
+                if (compare(key, curr.item) <= 0) {
+                    return new Window<E>(pred, curr);
+                }
+                pred = curr;
+                curr = succ;
+            }
+        }
+    }
+
+    @Override
+    public boolean add(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        for (; ; ) {
+            Window<E> w = find(e);
+            if (w.curr != tail && compare(e, w.curr.item) == 0) {
+                return false;
+            }
+            Node<E> node = new Node<E>(e, w.curr);
+            if (w.pred.next.compareAndSet(w.curr, node, false, false)) {
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+        for (; ; ) {
+            Window<E> w = find(o);
+            Node<E> curr = w.curr;
+            if (curr == tail || compare(o, curr.item) != 0) {
+                return false;
+            }
+            Node<E> succ = curr.next.getReference();
+            //逻辑删除 期望未标记：attemptMark()在已经标记时也返回true 会让两个线程都认为删除成功
+            //失败说明succ变了或者已经被其他线程删除 重新查找
+            if (!curr.next.compareAndSet(succ, succ, false, true)) {
+                continue;
+            }
+            w.pred.next.compareAndSet(curr, succ, false, false);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        if (o == null) {
+            throw new NullPointerException();
+        }
+        Node<E> curr = head.next.getReference();
+        while (curr != tail && compare(o, curr.item) > 0) {
+            curr = curr.next.getReference();
+        }
+        return curr != tail && compare(o, curr.item) == 0 && !curr.next.isMarked();
+    }
+
+    /**
+     * 最小元素 没有返回null
+     */
+    public E first() {
+        for (Node<E> n = head.next.getReference(); n != tail; n = n.next.getReference()) {
+            if (!n.next.isMarked()) {
+                return n.item;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 大于等于e的最小元素 没有返回null
+     */
+    public E ceiling(E e) {
+        Iterator<E> it = iterator(e, null);
+        return it.hasNext() ? it.next() : null;
+    }
+
+    /**
+     * 遍历计数 O(n)
+     */
+    @Override
+    public int size() {
+        int count = 0;
+        for (Node<E> n = head.next.getReference(); n != tail; n = n.next.getReference()) {
+            if (!n.next.isMarked() && ++count == Integer.MAX_VALUE) {
+                break;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return first() == null;
+    }
+
+    @Override
+    public void clear() {
+        Node<E> n;
+        while ((n = head.next.getReference()) != tail) {
+            remove(n.item);
+        }
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        return new Itr(null, null);
+    }
+
+    /**
+     * 范围迭代 [fromInclusive, toExclusive) null表示不限制
+     */
+    public Iterator<E> iterator(E fromInclusive, E toExclusive) {
+        return new Itr(fromInclusive, toExclusive);
+    }
+
+    public Comparator<? super E> comparator() {
+        return comparator;
+    }
+
+    /**
+     * 弱一致迭代器 跳过已标记的节点
+     */
+    private final class Itr implements Iterator<E> {
+
+        private final E to;
+
+        private Node<E> next;
+
+        private E lastReturned;
+
+        Itr(E from, E to) {
+            this.to = to;
+            Node<E> n = from == null ? head.next.getReference() : find(from).curr;
+            advance(n);
+        }
+
+        private void advance(Node<E> n) {
+            while (n != tail && n.next.isMarked()) {
+                n = n.next.getReference();
+            }
+            next = (n == tail || (to != null && compare(n.item, to) >= 0)) ? null : n;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return next != null;
+        }
+
+        @Override
+        public E next() {
+            Node<E> n = next;
+            if (n == null) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = n.item;
+            advance(n.next.getReference());
+            return lastReturned;
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            LockFreeSortedSet.this.remove(lastReturned);
+            lastReturned = null;
+        }
+    }
+}
@@ -0,0 +1,458 @@
+package com.xz.concurrent.collection;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.xz.concurrent.locks.Condition;
+import com.xz.concurrent.locks.ReentrantLock;
+
+import sun.misc.Unsafe;
+
+/**
+ * 有界阻塞队列 多生产者多消费者 无锁环形数组
+ * 1.每个槽位有一个序号sequences[i]：
+ * *序号 == 生产者下标p：槽位空闲 生产者CAS producerIndex p -> p+1 占有槽位 写入元素后序号设为p+1
+ * *序号 == 消费者下标c+1：槽位有元素 消费者CAS consumerIndex c -> c+1 占有槽位 取出元素后序号设为c+capacity
+ * *序号小于期望值说明队列满(生产者)或者空(消费者) 大于期望值说明下标已经被其他线程推进 重新读取下标
+ * *已经被占有但还没有写完的槽位视为操作还没有发生 不会自旋等待被抢占的线程
+ * 2.producerIndex和consumerIndex前后填充56字节 生产者和消费者的CAS不会伪共享
+ * 3.容量向上取2的幂 下标与mask取槽位
+ * 4.offer()/poll()不加锁 只有put()/take()需要等待时才使用waitLock：
+ * *等待线程持有waitLock 先增加waitingXxx 再重试一次 仍然失败才await()
+ * *对方写入序号(volatile) 再读取waitingXxx 大于0才获取waitLock并signal() 没有等待线程时不加锁
+ * 两边都是先写后读的volatile操作 至少有一方能看到对方 所以不会丢失唤醒
+ * 5.drainTo()批量出队 结束后用signalN()一次唤醒多个生产者
+ * 6.不支持remove(Object) 迭代器是一个近似的快照
+ */
+public class MpmcArrayBlockingQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    long p00, p01, p02, p03, p04, p05, p06;
+
+    /**
+     * 生产者下标 只增不减
+     */
+    private volatile long producerIndex;
+
+    long p10, p11, p12, p13, p14, p15, p16;
+
+    /**
+     * 消费者下标 只增不减
+     */
+    private volatile long consumerIndex;
+
+    long p20, p21, p22, p23, p24, p25, p26;
+
+    private final int mask;
+
+    private final Object[] buffer;
+
+    private final long[] sequences;
+
+    /**
+     * 只用于阻塞等待
+     */
+    private final ReentrantLock waitLock = new ReentrantLock();
+
+    private final Condition notEmpty = waitLock.newCondition();
+
+    private final Condition notFull = waitLock.newCondition();
+
+    /**
+     * 在notEmpty/notFull上等待的线程数 只在持有waitLock时修改
+     */
+    private volatile int waitingConsumers;
+
+    private volatile int waitingProducers;
+
+    /**
+     * @param capacity 容量 向上取2的幂
+     */
+    public MpmcArrayBlockingQueue(int capacity) {
+        if (capacity <= 0 || capacity > (1 << 30)) {
+            throw new IllegalArgumentException();
+        }
+        int n = (capacity == 1) ? 1 : Integer.highestOneBit(capacity - 1) << 1;
+        mask = n - 1;
+        buffer = new Object[n];
+        sequences = new long[n];
+        for (int i = 0; i < n; i++) {
+            sequences[i] = i;
+        }
+    }
+
+    /*--------------------------------槽位操作--------------------------------*/
+
+    private static long elementOffset(long index) {
+        return ABASE + ((index) << ASHIFT);
+    }
+
+    private static long sequenceOffset(long index) {
+        return SBASE + ((index) << SSHIFT);
+    }
+
+    /**
+     * 不唤醒等待线程的入队
+     */
+    private boolean offerNoSignal(E e) {
+        final long[] seqs = sequences;
+        final int mask = this.mask;
+        for (; ; ) {
+            long p = producerIndex;
+            long so = sequenceOffset(p & mask);
+            long dif = U.getLongVolatile(seqs, so) - p;
+            if (dif == 0L) {
+                if (U.compareAndSwapLong(this, PRODUCER_INDEX, p, p + 1)) {
+                    U.putObject(buffer, elementOffset(p & mask), e);
+                    //volatile写 发布元素 之后读取waitingConsumers不会被重排到前面
+                    U.putLongVolatile(seqs, so, p + 1);
+                    return true;
+                }
+            }
+            //槽位上一轮的元素还没有被取走(包括消费者已经占有但还没有清空) 视为队列满
+            else if (dif < 0L) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 不唤醒等待线程的出队
+     */
+    @SuppressWarnings("unchecked")
+    private E pollNoSignal() {
+        final long[] seqs = sequences;
+        final int mask = this.mask;
+        for (; ; ) {
+            long c = consumerIndex;
+            long so = sequenceOffset(c & mask);
+            long dif = U.getLongVolatile(seqs, so) - (c + 1);
+            if (dif == 0L) {
+                if (U.compareAndSwapLong(this, CONSUMER_INDEX, c, c + 1)) {
+                    long eo = elementOffset(c & mask);
+                    E e = (E) U.getObject(buffer, eo);
+                    U.putObject(buffer, eo, null);
+                    U.putLongVolatile(seqs, so, c + mask + 1);
+                    return e;
+                }
+            }
+            //槽位还没有被生产者写入(包括生产者已经占有但还没有发布) 视为队列空
+            else if (dif < 0L) {
+                return null;
+            }
+        }
+    }
+
+    /*--------------------------------唤醒--------------------------------*/
+
+    private void signalNotEmpty() {
+        if (waitingConsumers != 0) {
+            final ReentrantLock lock = this.waitLock;
+            lock.lock();
+            try {
+                notEmpty.signal();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private void signalNotFull(int n) {
+        if (waitingProducers != 0) {
+            final ReentrantLock lock = this.waitLock;
+            lock.lock();
+            try {
+                notFull.signalN(n);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /*--------------------------------入队--------------------------------*/
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        if (offerNoSignal(e)) {
+            signalNotEmpty();
+            return true;
+        }
+        return false;
+    }
+
+    @Override
+    public void put(E e) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        if (!offerNoSignal(e)) {
+            final ReentrantLock lock = this.waitLock;
+            lock.lockInterruptibly();
+            try {
+                waitingProducers++;
+                try {
+                    while (!offerNoSignal(e)) {
+                        notFull.await();
+                    }
+                } finally {
+                    waitingProducers--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        signalNotEmpty();
+    }
+
+    @Override
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        if (!offerNoSignal(e)) {
+            long nanos = unit.toNanos(timeout);
+            final ReentrantLock lock = this.waitLock;
+            lock.lockInterruptibly();
+            try {
+                waitingProducers++;
+                try {
+                    while (!offerNoSignal(e)) {
+                        if (nanos <= 0L) {
+                            return false;
+                        }
+                        nanos = notFull.awaitNanos(nanos);
+                    }
+                } finally {
+                    waitingProducers--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        signalNotEmpty();
+        return true;
+    }
+
+    /*--------------------------------出队--------------------------------*/
+
+    @Override
+    public E poll() {
+        E e = pollNoSignal();
+        if (e != null) {
+            signalNotFull(1);
+        }
+        return e;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e = pollNoSignal();
+        if (e == null) {
+            final ReentrantLock lock = this.waitLock;
+            lock.lockInterruptibly();
+            try {
+                waitingConsumers++;
+                try {
+                    while ((e = pollNoSignal()) == null) {
+                        notEmpty.await();
+                    }
+                } finally {
+                    waitingConsumers--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        signalNotFull(1);
+        return e;
+    }
+
+    @Override
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        E e = pollNoSignal();
+        if (e == null) {
+            long nanos = unit.toNanos(timeout);
+            final ReentrantLock lock = this.waitLock;
+            lock.lockInterruptibly();
+            try {
+                waitingConsumers++;
+                try {
+                    while ((e = pollNoSignal()) == null) {
+                        if (nanos <= 0L) {
+                            return null;
+                        }
+                        nanos = notEmpty.awaitNanos(nanos);
+                    }
+                } finally {
+                    waitingConsumers--;
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        signalNotFull(1);
+        return e;
+    }
+
+    /**
+     * 只能看到已经发布的队首元素 与poll()并发时可能返回刚被取走的元素
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        for (; ; ) {
+            long c = consumerIndex;
+            long so = sequenceOffset(c & mask);
+            long seq = U.getLongVolatile(sequences, so);
+            if (seq == c + 1) {
+                E e = (E) U.getObjectVolatile(buffer, elementOffset(c & mask));
+                if (e != null && c == consumerIndex) {
+                    return e;
+                }
+            }
+            else if (seq < c + 1) {
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    /**
+     * 批量出队 结束后一次唤醒最多出队数量的生产者
+     */
+    @Override
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null) {
+            throw new NullPointerException();
+        }
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        int n = 0;
+        try {
+            E e;
+            while (n < maxElements && (e = pollNoSignal()) != null) {
+                n++;
+                c.add(e);
+            }
+        } finally {
+            if (n > 0) {
+                signalNotFull(n);
+            }
+        }
+        return n;
+    }
+
+    /*--------------------------------其他--------------------------------*/
+
+    /**
+     * 两次读取consumerIndex相同时的差值 并发修改时是近似值
+     */
+    @Override
+    public int size() {
+        long after = consumerIndex;
+        for (; ; ) {
+            long before = after;
+            long p = producerIndex;
+            after = consumerIndex;
+            if (before == after) {
+                long size = p - after;
+                return (size < 0L) ? 0 : (size > mask + 1) ? mask + 1 : (int) size;
+            }
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return consumerIndex == producerIndex;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return mask + 1 - size();
+    }
+
+    /**
+     * 不支持 无锁的槽位不能从中间移除
+     */
+    @Override
+    public boolean remove(Object o) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void clear() {
+        while (poll() != null) {
+        }
+    }
+
+    /**
+     * 当前已经发布的元素的快照
+     */
+    @Override
+    @SuppressWarnings("unchecked")
+    public Iterator<E> iterator() {
+        ArrayList<E> snapshot = new ArrayList<E>();
+        for (long c = consumerIndex, p = producerIndex; c < p; c++) {
+            long i = c & mask;
+            if (U.getLongVolatile(sequences, sequenceOffset(i)) == c + 1) {
+                E e = (E) U.getObjectVolatile(buffer, elementOffset(i));
+                if (e != null) {
+                    snapshot.add(e);
+                }
+            }
+        }
+        final Iterator<E> it = snapshot.iterator();
+        return new Iterator<E>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public E next() {
+                return it.next();
+            }
+        };
+    }
+
+    /*-------------------------------------------CAS操作---------------------------------------------*/
+
+    private static final Unsafe U = Unsafe.getUnsafe();
+
+    private static final long PRODUCER_INDEX;
+
+    private static final long CONSUMER_INDEX;
+
+    private static final long ABASE;
+
+    private static final int ASHIFT;
+
+    private static final long SBASE;
+
+    private static final int SSHIFT;
+
+    static {
+        try {
+            Class<?> k = MpmcArrayBlockingQueue.class;
+            PRODUCER_INDEX = U.objectFieldOffset(k.getDeclaredField("producerIndex"));
+            CONSUMER_INDEX = U.objectFieldOffset(k.getDeclaredField("consumerIndex"));
+            ABASE = U.arrayBaseOffset(Object[].class);
+            ASHIFT = 31 - Integer.numberOfLeadingZeros(U.arrayIndexScale(Object[].class));
+            SBASE = U.arrayBaseOffset(long[].class);
+            SSHIFT = 31 - Integer.numberOfLeadingZeros(U.arrayIndexScale(long[].class));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
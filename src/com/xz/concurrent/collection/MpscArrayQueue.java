@@ -0,0 +1,114 @@
+package com.xz.concurrent.collection;
+
+/**
+ * 多生产者单消费者有界队列 无锁
+ * 1.生产者CAS producerIndex占有槽位 再putOrdered写入元素 消费者getObjectVolatile读到非null才能取出
+ * 占有槽位但还没有写入的元素视为还没有入队 poll()返回null 不会自旋等待被抢占的生产者
+ * 2.producerLimit缓存consumerIndex + capacity 生产者只在下标超过缓存时才读取consumerIndex
+ * 大部分offer()不会读取消费者的缓存行
+ * 3.消费者清空槽位后再推进consumerIndex 生产者读到consumerIndex后写入的槽位一定已经被清空
+ * 4.producerIndex/producerLimit与consumerIndex前后填充
+ */
+public class MpscArrayQueue<E> extends AbstractArrayQueue<E> {
+
+    long p00, p01, p02, p03, p04, p05, p06;
+
+    private volatile long producerIndex;
+
+    /**
+     * 生产者可以使用的下标上限(不包含) 只是缓存 不保证单调
+     * 两个生产者用不同时刻读到的consumerIndex刷新时 较慢的putOrderedLong可能写入较小的值
+     * 无害：偏小只会让offer()提前重新读取consumerIndex 永远不会超过真实的consumerIndex + capacity
+     */
+    private volatile long producerLimit;
+
+    long p10, p11, p12, p13, p14, p15, p16;
+
+    private volatile long consumerIndex;
+
+    long p20, p21, p22, p23, p24, p25, p26;
+
+    /**
+     * @param capacity 容量 向上取2的幂
+     */
+    public MpscArrayQueue(int capacity) {
+        this(capacity, WaitStrategy.PARK);
+    }
+
+    public MpscArrayQueue(int capacity, WaitStrategy waitStrategy) {
+        super(capacity, waitStrategy);
+        producerLimit = mask + 1;
+    }
+
+    @Override
+    long lvProducerIndex() {
+        return producerIndex;
+    }
+
+    @Override
+    long lvConsumerIndex() {
+        return consumerIndex;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        long p;
+        do {
+            p = producerIndex;
+            long limit = producerLimit;
+            if (p >= limit) {
+                //缓存的上限用完 读取消费者下标重新计算
+                limit = consumerIndex + mask + 1;
+                if (p >= limit) {
+                    return false;
+                }
+                U.putOrderedLong(this, P_LIMIT, limit);
+            }
+        }
+        while (!U.compareAndSwapLong(this, P_INDEX, p, p + 1));
+        U.putOrderedObject(buffer, elementOffset(p & mask), e);
+        signalConsumer();
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        final Object[] buffer = this.buffer;
+        //只有消费者写consumerIndex 普通读即可
+        long c = U.getLong(this, C_INDEX);
+        long offset = elementOffset(c & mask);
+        E e = (E) U.getObjectVolatile(buffer, offset);
+        if (e == null) {
+            return null;
+        }
+        U.putOrderedObject(buffer, offset, null);
+        U.putOrderedLong(this, C_INDEX, c + 1);
+        return e;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        return (E) U.getObjectVolatile(buffer, elementOffset(consumerIndex & mask));
+    }
+
+    private static final long P_INDEX;
+
+    private static final long P_LIMIT;
+
+    private static final long C_INDEX;
+
+    static {
+        try {
+            P_INDEX = U.objectFieldOffset(MpscArrayQueue.class.getDeclaredField("producerIndex"));
+            P_LIMIT = U.objectFieldOffset(MpscArrayQueue.class.getDeclaredField("producerLimit"));
+            C_INDEX = U.objectFieldOffset(MpscArrayQueue.class.getDeclaredField("consumerIndex"));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
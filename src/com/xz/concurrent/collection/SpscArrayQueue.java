@@ -0,0 +1,95 @@
+package com.xz.concurrent.collection;
+
+/**
+ * 单生产者单消费者有界队列 无锁 没有CAS
+ * 1.offer()只能在一个生产者线程调用 poll()/take()只能在一个消费者线程调用
+ * 2.生产者：槽位为null才能写入 putOrdered写元素 再putOrdered推进producerIndex
+ * 消费者：getObjectVolatile读到非null才能取出 putOrdered清空槽位 再putOrdered推进consumerIndex
+ * 双方只通过槽位通信 下标只用于size()
+ * 3.producerIndex和consumerIndex前后填充 生产者和消费者各自写自己的缓存行
+ */
+public class SpscArrayQueue<E> extends AbstractArrayQueue<E> {
+
+    long p00, p01, p02, p03, p04, p05, p06;
+
+    private volatile long producerIndex;
+
+    long p10, p11, p12, p13, p14, p15, p16;
+
+    private volatile long consumerIndex;
+
+    long p20, p21, p22, p23, p24, p25, p26;
+
+    /**
+     * @param capacity 容量 向上取2的幂
+     */
+    public SpscArrayQueue(int capacity) {
+        this(capacity, WaitStrategy.PARK);
+    }
+
+    public SpscArrayQueue(int capacity, WaitStrategy waitStrategy) {
+        super(capacity, waitStrategy);
+    }
+
+    @Override
+    long lvProducerIndex() {
+        return producerIndex;
+    }
+
+    @Override
+    long lvConsumerIndex() {
+        return consumerIndex;
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e == null) {
+            throw new NullPointerException();
+        }
+        final Object[] buffer = this.buffer;
+        //只有生产者写producerIndex 普通读即可
+        long p = U.getLong(this, P_INDEX);
+        long offset = elementOffset(p & mask);
+        if (U.getObjectVolatile(buffer, offset) != null) {
+            return false;
+        }
+        U.putOrderedObject(buffer, offset, e);
+        U.putOrderedLong(this, P_INDEX, p + 1);
+        signalConsumer();
+        return true;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        final Object[] buffer = this.buffer;
+        long c = U.getLong(this, C_INDEX);
+        long offset = elementOffset(c & mask);
+        E e = (E) U.getObjectVolatile(buffer, offset);
+        if (e == null) {
+            return null;
+        }
+        U.putOrderedObject(buffer, offset, null);
+        U.putOrderedLong(this, C_INDEX, c + 1);
+        return e;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public E peek() {
+        return (E) U.getObjectVolatile(buffer, elementOffset(consumerIndex & mask));
+    }
+
+    private static final long P_INDEX;
+
+    private static final long C_INDEX;
+
+    static {
+        try {
+            P_INDEX = U.objectFieldOffset(SpscArrayQueue.class.getDeclaredField("producerIndex"));
+            C_INDEX = U.objectFieldOffset(SpscArrayQueue.class.getDeclaredField("consumerIndex"));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
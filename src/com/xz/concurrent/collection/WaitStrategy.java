@@ -0,0 +1,52 @@
+package com.xz.concurrent.collection;
+
+import com.xz.concurrent.locks.LockSupport;
+
+/**
+ * SpscArrayQueue、MpscArrayQueue的put()/take()在队列满或者空时的等待方式
+ * 1.SPIN：忙等 延迟最低 一直占用CPU 只适合线程数不超过CPU数并且绑核的场景
+ * 2.YIELD：每次等待调用Thread.yield() 延迟较低 空闲时仍然占用CPU
+ * 3.PARK：先自旋和让出CPU 之后阻塞
+ * *消费者阻塞前登记自己 生产者入队后检查登记并唤醒 为此生产者每次入队多一次内存屏障
+ * *队列满时生产者使用有上限的定时阻塞 不需要消费者唤醒
+ */
+public enum WaitStrategy {
+
+    SPIN,
+
+    YIELD,
+
+    PARK;
+
+    /**
+     * PARK在阻塞前的等待次数 前一半自旋 后一半让出CPU
+     */
+    static final int PARK_SPINS = 1 << 7;
+
+    /**
+     * 生产者定时阻塞的最长时间
+     */
+    private static final long MAX_PARK_NANOS = 1000000L;
+
+    /**
+     * 第n次等待 PARK只处理阻塞之前的部分
+     */
+    final void idle(int n) {
+        if (this == YIELD || (this == PARK && n >= (PARK_SPINS >>> 1))) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * 没有唤醒者的等待(队列满时的生产者) PARK超过PARK_SPINS次后定时阻塞 时间从1微秒倍增到1毫秒
+     */
+    final void backoff(Object blocker, int n) {
+        if (this == PARK && n >= PARK_SPINS) {
+            int shift = Math.min(n - PARK_SPINS, 10);
+            LockSupport.parkNanos(blocker, Math.min(1000L << shift, MAX_PARK_NANOS));
+        }
+        else {
+            idle(n);
+        }
+    }
+}
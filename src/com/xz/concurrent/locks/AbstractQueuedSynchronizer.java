@@ -1,11 +1,8 @@
 package com.xz.concurrent.locks;
 
-import java.util.ArrayList;
+import java.util.ArrayDeque;
 import java.util.Collection;
-import java.util.Date;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.CompletableFuture;
 
 import sun.misc.Unsafe;
 
@@ -19,9 +16,9 @@ import sun.misc.Unsafe;
  * 而当持有锁的线程释放锁时，会唤醒队列中的后继线程
  * 需要做的三件事：同步状态的管理 线程的阻塞与唤醒 同步队列的维护
  * 使用AQS需要重写protected方法
+ * 同步队列和Condition的实现在AbstractQueuedSynchronizerCore中 与AbstractQueuedLongSynchronizer共用 这里只保留与int状态相关的部分
  */
-public abstract class AbstractQueuedSynchronizer extends AbstractOwnableSynchronizer implements java.io.Serializable {
-
+public abstract class AbstractQueuedSynchronizer extends AbstractQueuedSynchronizerCore implements java.io.Serializable {
     private static final long serialVersionUID = 7373984972572414691L;
 
     /**
@@ -31,138 +28,33 @@ public abstract class AbstractQueuedSynchronizer extends AbstractOwnableSynchron
     }
 
     /**
-     * 数据结构 双向列表 FIFO
-     * 总的来说；保存节点状态，前驱节点 后继节点 线程
+     * 异步获取的节点 没有阻塞的线程 由释放同步状态的线程代为获取并完成future
+     * 1.thread属性平时为null 只有在被推进(drive)的过程中才设置为推进线程 保证hasQueuedPredecessors()等判断正确
+     * 2.wip：推进计数 保证同一时刻只有一个线程在推进该节点 推进期间的其他请求会让推进线程再循环一次
      */
-    static final class Node {
-
-        /**
-         * 用于标记一个节点在共享模式下等待
-         */
-        static final Node SHARED = new Node();
-
-        /**
-         * 用于标记一个节点在独占模式下等待
-         */
-        static final Node EXCLUSIVE = null;
+    static final class AsyncNode extends Node {
 
         /**
-         * 等待状态：取消 当前线程因为取消或者中断被取消 终结状态 需要从等待队列中删除
+         * 获取结果
          */
-        static final int CANCELLED = 1;
+        final CompletableFuture<Void> future = new CompletableFuture<Void>();
 
         /**
-         * 等待状态：通知 当前线程的后继线程被阻塞或者即将被阻塞，当前线程释放锁或者取消后需要唤醒后继线程
-         * 一般是后继线程来设置前驱线程
+         * 获取的参数
          */
-        static final int SIGNAL = -1;
+        final int arg;
 
         /**
-         * 等待状态：条件等待 当前线程在Condition队列（等待队列）当中 将不会被用于sync queue(同步队列) 直到节点状态被设置为0
+         * 推进计数
          */
-        static final int CONDITION = -2;
+        volatile int wip;
 
-        /**
-         * 等待状态:传播 用于将唤醒后继线程传递下去 是为了完善和增强共享锁的唤醒机制
-         * 在一个节点成为头结点之前 是不会变成此状态
-         * 仅在共享模式下使用
-         */
-        static final int PROPAGATE = -3;
-
-        /**
-         * 等待状态
-         * 0：当前节点在同步队列中 等待获取锁
-         * 1：取消（终结状态）
-         * -1：表示当前节点的后继节点包含的线程需要运行
-         * -2：条件等待 表明在Condition等待队列中 将不会被用于sync queue(同步队列) 直到节点状态被设置为0
-         * -3：仅用于共享模式 用于将唤醒后继线程传播下去
-         */
-        volatile int waitStatus;
-
-        /**
-         * 前驱节点
-         */
-        volatile Node prev;
-
-        /**
-         * 后继节点
-         */
-        volatile Node next;
-
-        /**
-         * 节点对应的线程
-         */
-        volatile Thread thread;
-
-        /**
-         * 等待队列中的后继节点  是指Condition
-         */
-        Node nextWaiter;
-
-        /**
-         * 判断当前节点是否在共享模式下等待
-         */
-        final boolean isShared() {
-            return nextWaiter == SHARED;
+        AsyncNode(Node mode, int arg) {
+            super(null, mode);
+            this.arg = arg;
         }
-
-        /**
-         * 获取前驱节点 若为空抛出空指针异常
-         * @return the predecessor of this node
-         */
-        final Node predecessor() throws NullPointerException {
-            Node p = prev;
-            if (p == null) {
-                throw new NullPointerException();
-            }
-            else {
-                return p;
-            }
-        }
-
-        Node() {
-        }
-
-        /**
-         * addWaiter会使用此构造方法
-         * @param thread
-         * @param mode
-         */
-        Node(Thread thread, Node mode) {
-            nextWaiter = mode;
-            this.thread = thread;
-        }
-
-        /**
-         * Condition会调用此函数（等待队列 条件队列）
-         * @param thread
-         * @param waitStatus
-         */
-        Node(Thread thread, int waitStatus) {
-            this.waitStatus = waitStatus;
-            this.thread = thread;
-        }
-        /**
-         * 状态分析：0和CONDITION为始态，CANCELLED为终态 0状态同时也可以是节点生命周期的终态
-         */
     }
 
-    /*---------------------------------------------------------------------------------------------*/
-
-    /*--------------------------------------------CLH同步队列------------------------------------------*/
-
-    /**
-     * CLH中头结点
-     * 逻辑上意义：当前持有锁的线程 本身并不会存储线程信息 延迟初始化
-     */
-    private transient volatile Node head;
-
-    /**
-     * CLH尾结点
-     * 当一个线程无法获取锁而被加入到同步队列中，会用CAS来设置尾结点tail为当前线的对应节点
-     */
-    private transient volatile Node tail;
-
     /**
      * 同步状态 volatile:保证其他线程可见性  0 表示锁可获取状态
      * state<0 表示获取同步状态失败
@@ -194,251 +86,6 @@ public abstract class AbstractQueuedSynchronizer extends AbstractOwnableSynchron
         return unsafe.compareAndSwapInt(this, stateOffset, expect, update);
     }
 
-    /**
-     * 线程自旋的等待时间 微秒
-     */
-    static final long spinForTimeoutThreshold = 1000L;
-
-    /*----------------------------------CLH队列操作  添加节点----------------------------------*/
-
-    /**
-     * 该方法使用自旋的方式来保证向队列中添加Node
-     * for(;;)自旋
-     * 若队列为空 ，则把当前Node设置成头结点
-     * 若队列不为空，则在队列尾部添加Node
-     * 该方式还是条件队列转换为同步队列的方法  原因：同步队列和等待队列的数据结构均为Node
-     * 返回的是前驱节点
-     */
-    private Node enq(final Node node) {
-        //保证并发是能够正确的将node添加到队列尾端
-        for (; ; ) { // CAS自旋方式 - 死循环
-            Node t = tail;
-            //尾结点不存在  -- 队列为空
-            if (t == null) {
-                //CAS操作设置头结点 新创建一个节点
-                if (compareAndSetHead(new Node())) {
-                    tail = head;
-                }
-            }
-            else {
-                //node节点的前驱节点指向尾结点
-                //当前的前驱是之前的尾结点
-                node.prev = t;
-                //CAS操作将尾结点指向node节点
-                if (compareAndSetTail(t, node)) {
-                    t.next = node;
-                    return t;
-                }
-            }
-        }
-    }
-
-    /**
-     * 将构造的同步节点加入到同步队列尾部
-     * 使用链表的方式将Node节点添加到队列尾部，若tail的前驱节点不为空（队列不为空）则进行CAS添加到尾部
-     * 如果更新失败（存在并发竞争） 进入enq()方法进行更新
-     * @param mode Node.EXCLUSIVE 表示独占, Node.SHARED 表示共享
-     * @return 返回新加的节点
-     */
-    private Node addWaiter(Node mode) { //节点模式  独占还是共享
-        //生成当前线程的节点
-        Node node = new Node(Thread.currentThread(), mode);
-        Node pred = tail;
-        //快速入队 若失败 进行enq()插入
-        if (pred != null) {
-            //尾结点存在 将新生成的节点添加在尾结点tail后面
-            node.prev = pred;
-            //CAS操作将尾结点指向新生成的节点 之前尾结点的后继指向新生成的节点
-            if (compareAndSetTail(pred, node)) {
-                pred.next = node;
-                return node;
-            }
-        }
-        //尾结点不存在 表示同步队列还没有初始化 将新生成的节点添加到尾结点 通过自旋的方式进入队列
-        enq(node);
-        return node;
-    }
-
-    /**
-     * 设置头结点
-     * @param node the node
-     */
-    private void setHead(Node node) {
-        head = node;
-        node.thread = null;
-        node.prev = null;
-    }
-
-    /**
-     * 使用LockSupport.unpark(Thread thread)来唤醒被阻塞的线程
-     * @param node the node
-     */
-    private void unparkSuccessor(Node node) {
-
-        int ws = node.waitStatus;
-        // 修改头结点的状态
-        if (ws < 0) {
-            compareAndSetWaitStatus(node, ws, 0);
-        }
-        //获取后继线程
-        Node s = node.next;
-        if (s == null || s.waitStatus > 0) {//寻找下一个符合条件的节点
-            s = null;
-            for (Node t = tail; t != null && t != node; t = t.prev) {
-                if (t.waitStatus <= 0) {
-                    s = t;
-                }
-            }
-        }
-        //唤醒后继线程
-        if (s != null) {
-            LockSupport.unpark(s.thread);
-        }
-    }
-
-    /**
-     * 共享模式下 释放同步状态
-     */
-    private void doReleaseShared() {
-
-        for (; ; ) {
-            //获取头结点
-            Node h = head;
-            //头结点不为空并且不等于尾结点
-            if (h != null && h != tail) {
-                int ws = h.waitStatus;
-                //若头结点对应的状态是SIGNAL 代表后继节点对应的线程需要被unpark()唤醒
-                if (ws == Node.SIGNAL) {
-                    //将头结点对应的线程状态 = 空状态
-                    if (!compareAndSetWaitStatus(h, Node.SIGNAL, 0)) {
-                        continue;
-                    }
-                    //唤醒后继节点的线程
-                    unparkSuccessor(h);
-                }
-                //头结点对应的状态为空状态 ， 则设置尾结点对应的线程所拥有的共享锁为其他线程获取锁的空状态
-                else if (ws == 0 && !compareAndSetWaitStatus(h, 0, Node.PROPAGATE)) {
-                    continue;
-                }
-            }
-            //若头节点发生变化，则继续循环
-            if (h == head) {
-                break;
-            }
-        }
-    }
-
-    /**
-     * 改方法与setHead()相比 在设置头节点的基础上 还会唤醒后继线程 因为是共享模式
-     * 将当前节点设置为头结点 并调用doReleaseShared()方法
-     */
-    private void setHeadAndPropagate(Node node, int propagate) {
-        //将当前节点设置为头节点
-        Node h = head;
-        setHead(node);
-        //还有剩余量 继续唤醒后继线程
-        if (propagate > 0 || h == null || h.waitStatus < 0 || (h = head) == null || h.waitStatus < 0) {
-            Node s = node.next;
-            //共享模式 唤醒后继线程
-            if (s == null || s.isShared()) {
-                doReleaseShared();
-            }
-        }
-    }
-
-    /**
-     * 获取同步状态失败 取消节点  不懂存在的意义
-     */
-    private void cancelAcquire(Node node) {
-        // 节点不存在
-        if (node == null) {
-            return;
-        }
-
-        node.thread = null;
-
-        // 跳过取消状态的节点
-        Node pred = node.prev;
-        while (pred.waitStatus > 0) {
-            node.prev = pred = pred.prev;
-        }
-
-        Node predNext = pred.next;
-
-        //将当前节点状态设置成CANCELLED
-        node.waitStatus = Node.CANCELLED;
-
-        if (node == tail && compareAndSetTail(node, pred)) {
-            compareAndSetNext(pred, predNext, null);
-        }
-        else {
-            int ws;
-            if (pred != head && ((ws = pred.waitStatus) == Node.SIGNAL || (ws <= 0 && compareAndSetWaitStatus(pred, ws,
-                    Node.SIGNAL))) && pred.thread != null) {
-                Node next = node.next;
-                if (next != null && next.waitStatus <= 0) {
-                    compareAndSetNext(pred, predNext, next);
-                }
-            }
-            else {
-                //唤醒后继节点
-                unparkSuccessor(node);
-            }
-            node.next = node;
-        }
-    }
-
-    /**
-     * pred:前驱节点 node:当前节点(尾结点)
-     * ws = SINGLE 表示可以被前驱节点唤醒 当前线程成可以被挂起 等待前驱节点唤醒 返回true
-     * ws>0 前驱节点取消 并循环检查此前驱节点之前所有连续取消的节点 并返回false(不能挂起)
-     * 尝试将当前节点的前驱节点的等待状态设置为SINGLE
-     * 判断当前节点中的线程是否可以安全的进入park() 返回true 进程可以进入park()阻塞
-     */
-    private static boolean shouldParkAfterFailedAcquire(Node pred, Node node) {
-        //获取前驱节点的状态
-        int ws = pred.waitStatus;
-        if (ws == Node.SIGNAL)
-        //若前驱节点状态为SINGLE 则当前线程可以被阻塞
-        {
-            return true;
-        }
-        //更换前驱节点 当前驱节点的状态为CANCELLED = 1  前驱节点不合理
-        //将前驱节点移除队列
-        if (ws > 0) {
-            //前驱节点的状态为CANCELLED = 1 那就一直向前遍历 知道找到一个正常等待的状态 ws<=0
-            do {
-                node.prev = pred = pred.prev;
-            }
-            while (pred.waitStatus > 0);
-            //并将当前Node排在后面
-            pred.next = node;
-        }
-        else {
-            //前驱节点正常 CAS修改前驱节点的状态为SIGNAL
-            //ws=0 表示前驱节点获取到同步状态 当前线程不应该被挂起
-            compareAndSetWaitStatus(pred, ws, Node.SIGNAL);
-        }
-        return false;
-    }
-
-    /**
-     * 中断当前线程
-     */
-    static void selfInterrupt() {
-        Thread.currentThread().interrupt();
-    }
-
-    /**
-     * 阻塞线程 并 检测线程是否被中断
-     */
-    private final boolean parkAndCheckInterrupt() {
-        //阻塞当前线程 让线程进入waiting状态 等待被唤醒或者中断
-        LockSupport.park(this);
-        //检测线程是否被中断
-        return Thread.interrupted();
-    }
-
     /**
      * 只有前驱节点是头结点，才能获取同步状态
      * 以自旋的方式获取同步状态 若获取不到则阻塞下节点中的线程 阻塞后的线程等待前驱线程来唤醒  若在整个过程中被中断 返回true 否则返回false
@@ -663,6 +310,14 @@ public abstract class AbstractQueuedSynchronizer extends AbstractOwnableSynchron
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * 独占式异步获取 由acquireAsync()调用 执行的线程不一定是发起获取的线程
+     * 默认与tryAcquire()相同 记录持有线程的同步器需要重写 使获取结果不属于执行线程
+     */
+    protected boolean tryAcquireAsync(int arg) {
+        return tryAcquire(arg);
+    }
+
     /**
      * 可重写方法 独占式释放同步状态
      */
@@ -684,13 +339,6 @@ public abstract class AbstractQueuedSynchronizer extends AbstractOwnableSynchron
         throw new UnsupportedOperationException();
     }
 
-    /**
-     * 检查当前线程是否是持有锁的线程
-     */
-    protected boolean isHeldExclusively() {
-        throw new UnsupportedOperationException();
-    }
-
     /**
      * 独占式获取同步状态
      */
@@ -782,141 +430,169 @@ public abstract class AbstractQueuedSynchronizer extends AbstractOwnableSynchron
         return false;
     }
 
-    /*-------------------------------------------功能方法-----------------------------------------------*/
+    /*-------------------------------------------异步获取-----------------------------------------------*/
 
     /**
-     * 判断是否存在同步队列
+     * 当前线程正在执行的异步任务队列 用于把推进和完成future的嵌套调用展开成循环 避免回调中释放锁导致的递归
      */
-    public final boolean hasQueuedThreads() {
-        return head != tail;
-    }
+    private static final ThreadLocal<ArrayDeque<Runnable>> asyncTasks = new ThreadLocal<ArrayDeque<Runnable>>();
 
     /**
-     *
+     * 独占式异步获取同步状态 不阻塞调用线程
+     * 能立即获取则返回已完成的future 否则将异步节点加入同步队列 由释放同步状态的线程代为获取后完成future
+     * 1.获取使用tryAcquireAsync() future在使获取成功的线程中完成(调用线程或者释放线程) 非async的回调也在该线程执行
+     * 2.取消future会将节点移出同步队列 若取消时已经获取成功 则自动释放
      */
-    public final boolean hasContended() {
-        return head != null;
-    }
-
-    /**
-     * 获取第一个节点的线程
-     */
-    public final Thread getFirstQueuedThread() {
-        return (head == tail) ? null : fullGetFirstQueuedThread();
-    }
-
-    private Thread fullGetFirstQueuedThread() {
-        Node h, s;
-        Thread st;
-        if (((h = head) != null && (s = h.next) != null && s.prev == head && (st = s.thread) != null) || (
-                (h = head) != null && (s = h.next) != null && s.prev == head && (st = s.thread) != null)) {
-            return st;
+    public final CompletableFuture<Void> acquireAsync(int arg) {
+        if (tryAcquireAsync(arg)) {
+            return CompletableFuture.completedFuture(null);
         }
-
-        Node t = tail;
-        Thread firstThread = null;
-        while (t != null && t != head) {
-            Thread tt = t.thread;
-            if (tt != null) {
-                firstThread = tt;
-            }
-            t = t.prev;
-        }
-        return firstThread;
+        return enqAsync(Node.EXCLUSIVE, arg);
     }
 
     /**
-     * 判断线程是否在队列当中
+     * 共享式异步获取同步状态 与acquireAsync()相同 成功后会继续向后传播唤醒
      */
-    public final boolean isQueued(Thread thread) {
-        if (thread == null) {
-            throw new NullPointerException();
-        }
-        for (Node p = tail; p != null; p = p.prev) {
-            if (p.thread == thread) {
-                return true;
-            }
+    public final CompletableFuture<Void> acquireSharedAsync(int arg) {
+        if (tryAcquireShared(arg) >= 0) {
+            return CompletableFuture.completedFuture(null);
         }
-        return false;
+        return enqAsync(Node.SHARED, arg);
     }
 
     /**
-     * 第一个节点是否是独占模式锁
+     * 构造异步节点加入同步队列 并进行第一次推进
      */
-    final boolean apparentlyFirstQueuedIsExclusive() {
-        Node h, s;
-        return (h = head) != null && (s = h.next) != null && !s.isShared() && s.thread != null;
+    private CompletableFuture<Void> enqAsync(Node mode, int arg) {
+        final AsyncNode node = new AsyncNode(mode, arg);
+        enq(node);
+        signalAsync(node);
+        //取消时重新推进 由推进线程将节点移出队列
+        node.future.whenComplete((v, ex) -> {
+            if (node.future.isCancelled()) {
+                signalAsync(node);
+            }
+        });
+        return node.future;
     }
 
     /**
-     * 判断同步队列是否有前驱节点
+     * 唤醒异步节点 相当于同步节点的unpark()
      */
-    public final boolean hasQueuedPredecessors() {
-
-        Node t = tail; // Read fields in reverse initialization order
-        Node h = head;
-        Node s;
-        return h != t && ((s = h.next) == null || s.thread != Thread.currentThread());
+    private void signalAsync(final AsyncNode node) {
+        runAsyncTask(() -> driveAsync(node));
     }
 
     /**
-     * 获取同步队列的长度
+     * 推进异步节点 与acquireQueued()的自旋相同：前驱为头结点时尝试获取 否则将前驱设置为SIGNAL后等待下一次释放
+     * 通过wip保证只有一个推进线程 获取成功或者取消后wip不再归零 之后的推进请求直接忽略
      */
-    public final int getQueueLength() {
-        int n = 0;
-        for (Node p = tail; p != null; p = p.prev) {
-            if (p.thread != null) {
-                ++n;
+    private void driveAsync(AsyncNode node) {
+        if (unsafe.getAndAddInt(node, wipOffset, 1) != 0) {
+            return;
+        }
+        int missed = 1;
+        for (; ; ) {
+            if (node.future.isDone()) {
+                //被取消或者被外部完成 移出同步队列
+                cancelAcquire(node);
+                return;
+            }
+            node.thread = Thread.currentThread();
+            try {
+                for (; ; ) {
+                    final Node p = node.predecessor();
+                    if (p == head) {
+                        if (node.isShared()) {
+                            int r = tryAcquireShared(node.arg);
+                            if (r >= 0) {
+                                setHeadAndPropagate(node, r);
+                                p.next = null;
+                                completeAsync(node);
+                                return;
+                            }
+                        }
+                        else if (tryAcquireAsync(node.arg)) {
+                            setHead(node);
+                            p.next = null;
+                            completeAsync(node);
+                            return;
+                        }
+                    }
+                    if (shouldParkAfterFailedAcquire(p, node)) {
+                        break;
+                    }
+                }
+            } catch (Throwable ex) {
+                cancelAcquire(node);
+                node.future.completeExceptionally(ex);
+                return;
+            }
+            node.thread = null;
+            if ((missed = unsafe.getAndAddInt(node, wipOffset, -missed) - missed) == 0) {
+                return;
             }
         }
-        return n;
     }
 
     /**
-     * 获取同步队列的线程集合
+     * 获取成功后完成future 若future已经被取消 则释放刚刚获取的同步状态
      */
-    public final Collection<Thread> getQueuedThreads() {
-        ArrayList<Thread> list = new ArrayList<Thread>();
-        for (Node p = tail; p != null; p = p.prev) {
-            Thread t = p.thread;
-            if (t != null) {
-                list.add(t);
+    private void completeAsync(final AsyncNode node) {
+        runAsyncTask(() -> {
+            if (!node.future.complete(null)) {
+                if (node.isShared()) {
+                    releaseShared(node.arg);
+                }
+                else {
+                    release(node.arg);
+                }
             }
-        }
-        return list;
+        });
     }
 
     /**
-     * 获取同步队列独占模式的线程集合
-     * @return
+     * 执行异步任务 若当前线程已经在执行异步任务 则加入队列 由最外层的调用依次执行
      */
-    public final Collection<Thread> getExclusiveQueuedThreads() {
-        ArrayList<Thread> list = new ArrayList<Thread>();
-        for (Node p = tail; p != null; p = p.prev) {
-            if (!p.isShared()) {
-                Thread t = p.thread;
-                if (t != null) {
-                    list.add(t);
+    private static void runAsyncTask(Runnable task) {
+        ArrayDeque<Runnable> q = asyncTasks.get();
+        if (q != null) {
+            q.add(task);
+            return;
+        }
+        asyncTasks.set(q = new ArrayDeque<Runnable>());
+        RuntimeException failure = null;
+        try {
+            do {
+                try {
+                    task.run();
+                } catch (RuntimeException ex) {
+                    //继续执行剩余任务 避免丢失唤醒
+                    if (failure == null) {
+                        failure = ex;
+                    }
                 }
             }
+            while ((task = q.poll()) != null);
+        } finally {
+            asyncTasks.remove();
+        }
+        if (failure != null) {
+            throw failure;
         }
-        return list;
     }
 
     /**
-     * 获取同步队列共享式的线程集合
+     * 唤醒后继节点 异步节点由当前线程代为获取
      */
-    public final Collection<Thread> getSharedQueuedThreads() {
-        ArrayList<Thread> list = new ArrayList<Thread>();
-        for (Node p = tail; p != null; p = p.prev) {
-            if (p.isShared()) {
-                Thread t = p.thread;
-                if (t != null) {
-                    list.add(t);
-                }
-            }
+    @Override
+    final void wakeUp(Node s) {
+        if (s instanceof AsyncNode) {
+            signalAsync((AsyncNode) s);
+        }
+        else {
+            LockSupport.unpark(s.thread);
         }
-        return list;
     }
 
     @Override
@@ -928,73 +604,6 @@ public abstract class AbstractQueuedSynchronizer extends AbstractOwnableSynchron
 
     /*--------------------------------------Condition功能方法----------------------------------------*/
 
-    /**
-     * 判断某个节点是否在同步队列中
-     */
-    final boolean isOnSyncQueue(Node node) {
-        if (node.waitStatus == Node.CONDITION || node.prev == null) {
-            return false;
-        }
-        if (node.next != null) {
-            return true;
-        }
-
-        return findNodeFromTail(node);
-    }
-
-    /**
-     * 在同步队列中查找某个节点
-     */
-    private boolean findNodeFromTail(Node node) {
-        Node t = tail;
-        for (; ; ) {
-            if (t == node) {
-                return true;
-            }
-            if (t == null) {
-                return false;
-            }
-            t = t.prev;
-        }
-    }
-
-    /**
-     * 将条件队列中的节点转换到同步队列
-     */
-    final boolean transferForSignal(Node node) {
-        //将节点的状态设置为初始状态 0 若修改不成功 说明节点被取消了
-        if (!compareAndSetWaitStatus(node, Node.CONDITION, 0)) {
-            return false;
-        }
-        //利用enq()将节点添加到同步队列尾部  返回的是前驱节点
-        Node p = enq(node);
-        int ws = p.waitStatus;
-        //将前驱节点的状态设置为SIGNAL  不成功 释放线程
-        if (ws > 0 || !compareAndSetWaitStatus(p, ws, Node.SIGNAL)) {
-            LockSupport.unpark(node.thread);
-        }
-        return true;
-    }
-
-    /**
-     * 判断是否发生了signal()
-     * 判断是否发生signal 只需要判断是不是离开条件队列 进入到同步队列
-     * 一个节点的状态要是CONDITION 就没有进入到同步队列当中
-     */
-    final boolean transferAfterCancelledWait(Node node) {
-        //没有发生signal()方法
-        if (compareAndSetWaitStatus(node, Node.CONDITION, 0)) {
-            //将节点添加到同步队列  但是在此过程中并没有断开node的nextWaiter（后续断开）
-            enq(node);
-            return true;
-        }
-        //中断发生前 线程被signal 只需要等待线程重新进入同步队列
-        while (!isOnSyncQueue(node)) {
-            Thread.yield();
-        }
-        return false;
-    }
-
     /**
      * 释放当前线程占用的锁（调用await()释放锁）
      */
@@ -1018,6 +627,16 @@ public abstract class AbstractQueuedSynchronizer extends AbstractOwnableSynchron
         }
     }
 
+    @Override
+    final long saveAndRelease(Node node) {
+        return fullyRelease(node);
+    }
+
+    @Override
+    final boolean reacquire(Node node, long savedState) {
+        return acquireQueued(node, (int) savedState);
+    }
+
     /**
      *
      */
@@ -1066,413 +685,15 @@ public abstract class AbstractQueuedSynchronizer extends AbstractOwnableSynchron
      * 入队前获取锁状态，调用await()方法 释放锁状态 入队
      * 出队，调用single()方法出队 线程不持有锁状态
      */
-    public class ConditionObject implements Condition, java.io.Serializable {
+    public class ConditionObject extends BaseConditionObject {
 
         private static final long serialVersionUID = 1173984872572414699L;
 
-        /**
-         * 条件队列的头结点
-         */
-        private transient Node firstWaiter;
-
-        /**
-         * 条件队列的尾结点
-         */
-        private transient Node lastWaiter;
-
         /**
          * 无参构造
          */
         public ConditionObject() {
         }
-
-        /**
-         * 将当前线程封装成Node节点 加入到条件队列
-         * 不存在并发情况 因为调用await()方法代表已经获取锁 不需要CAS操作
-         */
-        private Node addConditionWaiter() {
-            Node t = lastWaiter;
-            //如果尾节点状态为CANCELLED 则先遍历真个链表 清除被CANCELLED的节点）
-            if (t != null && t.waitStatus != Node.CONDITION) {
-                //遍历条件队列 删除状态为已取消状态的节点
-                unlinkCancelledWaiters();
-                t = lastWaiter;
-            }
-            //封装节点
-            Node node = new Node(Thread.currentThread(), Node.CONDITION);
-            //尾结点 == null 将入列节点设置为条件队列的头结点
-            if (t == null) {
-                firstWaiter = node;
-            }
-            //反之将其添加在尾结点的后面
-            else {
-                t.nextWaiter = node;
-            }
-            lastWaiter = node;
-            return node;
-        }
-
-        /**
-         * 唤醒后继节点
-         * 将先入条件队列的节点移除或者转到同步队列 直到有取消的或者为null的节点为止
-         */
-        private void doSignal(Node first) {
-            //循环找到第一个没有被CANCELLED的节点 进行唤醒
-            do {
-                //将firstWaiter指向条件队列对头的下一个节点
-                if ((firstWaiter = first.nextWaiter) == null) {
-                    //first节点的nextWaiter == null 将尾节点设置为null
-                    lastWaiter = null;
-                }
-                first.nextWaiter = null;
-            }
-            while (!transferForSignal(first) && (first = firstWaiter) != null);
-        }
-
-        /**
-         * 唤醒所有后继线程 (自旋唤醒)
-         * 将所有节点从条件队列中移除或者转到同步队列
-         * @param first (non-null) the first node on condition queue
-         */
-        private void doSignalAll(Node first) {
-            //条件队列清空
-            lastWaiter = firstWaiter = null;
-            do {
-                Node next = first.nextWaiter;
-                first.nextWaiter = null;
-                //将节点转换到同步队列当中
-                transferForSignal(first);
-                first = next;
-            }
-            while (first != null);
-        }
-
-        /**
-         * 遍历所有条件队列的节点，移除状态为取消状态(CANCELLED)的节点
-         */
-        private void unlinkCancelledWaiters() {
-            //从头结点开始遍历
-            Node t = firstWaiter;
-            Node trail = null;
-            while (t != null) {
-                Node next = t.nextWaiter;
-                if (t.waitStatus != Node.CONDITION) {
-                    t.nextWaiter = null;
-                    if (trail == null) {
-                        firstWaiter = next;
-                    }
-                    else {
-                        trail.nextWaiter = next;
-                    }
-                    if (next == null) {
-                        lastWaiter = trail;
-                    }
-                }
-                else {
-                    trail = t;
-                }
-                t = next;
-            }
-        }
-
-        /**
-         * 唤醒一个节点
-         * 将最先入列的条件节点转到同步队列当中
-         * returns {@code false}
-         */
-        @Override
-        public final void signal() {
-            //检查是否是当前线程持有锁  因为调用这个方法的线程的前提都是获取了锁
-            if (!isHeldExclusively()) {
-                throw new IllegalMonitorStateException();
-            }
-            Node first = firstWaiter;
-            if (first != null) {
-                doSignal(first);
-            }
-        }
-
-        /**
-         * 唤醒所有后继线程 -- 唤醒条件队列中的线程
-         */
-        @Override
-        public final void signalAll() {
-            if (!isHeldExclusively()) {
-                throw new IllegalMonitorStateException();
-            }
-            Node first = firstWaiter;
-            if (first != null) {
-                doSignalAll(first);
-            }
-        }
-
-        /**
-         * 不可中断的条件等待
-         */
-        @Override
-        public final void awaitUninterruptibly() {
-            //添加条件队列节点
-            Node node = addConditionWaiter();
-            //获取节点释放锁之前的状态
-            int savedState = fullyRelease(node);
-            boolean interrupted = false;
-            while (!isOnSyncQueue(node)) {
-                //如果条件队列节点还没有被转到同步队列上，则阻塞当前线程
-                LockSupport.park(this);
-                //线程中断
-                if (Thread.interrupted()) {
-                    interrupted = true;
-                }
-            }
-            //此时线程已在同步队列上 此时去竞争独占锁
-            if (acquireQueued(node, savedState) || interrupted) {
-                //竞争锁中断或者之前已经被中断 则中断当前线程
-                selfInterrupt();
-            }
-        }
-
-        /**
-         * 表示退出await()方法需要进行自我中断一下，中断发生在signal之后
-         */
-        private static final int REINTERRUPT = 1;
-
-        /**
-         * 表示退出await()方法时需要抛出中断异常 这种模式发生在signal之前
-         */
-        private static final int THROW_IE = -1;
-
-        /**
-         * 检查节点的中断模式
-         * 是否发生中断  是 否
-         * 发生中断的情况 ： 在signal()之前 - 在signal()之后
-         */
-        private int checkInterruptWhileWaiting(Node node) {
-            return Thread.interrupted() ? (transferAfterCancelledWait(node) ? THROW_IE : REINTERRUPT) : 0;
-        }
-
-        /**
-         * 进行再次中断
-         */
-        private void reportInterruptAfterWait(int interruptMode) throws InterruptedException {
-            //调用signal之前
-            if (interruptMode == THROW_IE) {
-                throw new InterruptedException();
-            }
-            //调用signal之后
-            else if (interruptMode == REINTERRUPT) {
-                selfInterrupt();
-            }
-        }
-
-        /**
-         * 等待
-         */
-        @Override
-        public final void await() throws InterruptedException {
-            //当前线程已经被中断了 退出
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
-            }
-            //将当前线程包装成Node节点 加入到条件队列
-            Node node = addConditionWaiter();
-            //释放当前线程占用的锁 保存当前的锁状态
-            int savedState = fullyRelease(node);
-            int interruptMode = 0;
-            //当前节点不再同步队列中 说明刚刚被await()还没有调用single()方法 直接将当前线程挂起
-            while (!isOnSyncQueue(node)) {
-                //线程挂起  被唤醒继续向下执行
-                LockSupport.park(this);
-
-                //执行下面代码 线程被唤醒 唤醒的原因：中断 调用signal()方法
-                //检查线程被唤醒的原因 如是因为中断 跳出循环
-                //中断的两种情况：在signal()之前中断抛出中断异常 在signal()之后中断 补一个自我中断
-                if ((interruptMode = checkInterruptWhileWaiting(node)) != 0) {
-                    break;
-                }
-            }
-            //此时线程在同步队列 调用AQS的acquireQueued()进行争抢同步状态（返回中断状态）所以当await()方法返回时 一定是争夺资源成功了
-            if (acquireQueued(node, savedState) && interruptMode != THROW_IE) {
-                interruptMode = REINTERRUPT;
-            }
-            //再次过滤所有状态为CANCELLED的节点 上面的断开
-            if (node.nextWaiter != null) {
-                unlinkCancelledWaiters();
-            }
-            //对中断状态进行处理 知道最后获取锁成功之后才会进行中断处理
-            if (interruptMode != 0) {
-                reportInterruptAfterWait(interruptMode);
-            }
-        }
-
-        /**
-         *
-         */
-        @Override
-        public final long awaitNanos(long nanosTimeout) throws InterruptedException {
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
-            }
-            Node node = addConditionWaiter();
-            int savedState = fullyRelease(node);
-            final long deadline = System.nanoTime() + nanosTimeout;
-            int interruptMode = 0;
-            while (!isOnSyncQueue(node)) {
-                if (nanosTimeout <= 0L) {
-                    transferAfterCancelledWait(node);
-                    break;
-                }
-                if (nanosTimeout >= spinForTimeoutThreshold) {
-                    LockSupport.parkNanos(this, nanosTimeout);
-                }
-                if ((interruptMode = checkInterruptWhileWaiting(node)) != 0) {
-                    break;
-                }
-                nanosTimeout = deadline - System.nanoTime();
-            }
-            if (acquireQueued(node, savedState) && interruptMode != THROW_IE) {
-                interruptMode = REINTERRUPT;
-            }
-            if (node.nextWaiter != null) {
-                unlinkCancelledWaiters();
-            }
-            if (interruptMode != 0) {
-                reportInterruptAfterWait(interruptMode);
-            }
-            return deadline - System.nanoTime();
-        }
-
-        /**
-         * 带时间期限的等待
-         */
-        @Override
-        public final boolean awaitUntil(Date deadline) throws InterruptedException {
-            long abstime = deadline.getTime();
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
-            }
-            Node node = addConditionWaiter();
-            int savedState = fullyRelease(node);
-            boolean timedout = false;
-            int interruptMode = 0;
-            while (!isOnSyncQueue(node)) {
-                if (System.currentTimeMillis() > abstime) {
-                    timedout = transferAfterCancelledWait(node);
-                    break;
-                }
-                LockSupport.parkUntil(this, abstime);
-                if ((interruptMode = checkInterruptWhileWaiting(node)) != 0) {
-                    break;
-                }
-            }
-            if (acquireQueued(node, savedState) && interruptMode != THROW_IE) {
-                interruptMode = REINTERRUPT;
-            }
-            if (node.nextWaiter != null) {
-                unlinkCancelledWaiters();
-            }
-            if (interruptMode != 0) {
-                reportInterruptAfterWait(interruptMode);
-            }
-            return !timedout;
-        }
-
-        /**
-         * 超时等待
-         */
-        @Override
-        public final boolean await(long time, TimeUnit unit) throws InterruptedException {
-            long nanosTimeout = unit.toNanos(time);
-            if (Thread.interrupted()) {
-                throw new InterruptedException();
-            }
-            Node node = addConditionWaiter();
-            int savedState = fullyRelease(node);
-            final long deadline = System.nanoTime() + nanosTimeout;
-            boolean timedout = false;
-            int interruptMode = 0;
-            while (!isOnSyncQueue(node)) {
-                if (nanosTimeout <= 0L) {
-                    timedout = transferAfterCancelledWait(node);
-                    break;
-                }
-                if (nanosTimeout >= spinForTimeoutThreshold) {
-                    LockSupport.parkNanos(this, nanosTimeout);
-                }
-                if ((interruptMode = checkInterruptWhileWaiting(node)) != 0) {
-                    break;
-                }
-                nanosTimeout = deadline - System.nanoTime();
-            }
-            if (acquireQueued(node, savedState) && interruptMode != THROW_IE) {
-                interruptMode = REINTERRUPT;
-            }
-            if (node.nextWaiter != null) {
-                unlinkCancelledWaiters();
-            }
-            if (interruptMode != 0) {
-                reportInterruptAfterWait(interruptMode);
-            }
-            return !timedout;
-        }
-
-        //  功能支持方法
-
-        /**
-         *
-         */
-        final boolean isOwnedBy(AbstractQueuedSynchronizer sync) {
-            return sync == AbstractQueuedSynchronizer.this;
-        }
-
-        /**
-         * 判读是否存在条件队列
-         */
-        protected final boolean hasWaiters() {
-            if (!isHeldExclusively()) {
-                throw new IllegalMonitorStateException();
-            }
-            for (Node w = firstWaiter; w != null; w = w.nextWaiter) {
-                if (w.waitStatus == Node.CONDITION) {
-                    return true;
-                }
-            }
-            return false;
-        }
-
-        /**
-         * 获取条件队列长度
-         */
-        protected final int getWaitQueueLength() {
-            if (!isHeldExclusively()) {
-                throw new IllegalMonitorStateException();
-            }
-            int n = 0;
-            for (Node w = firstWaiter; w != null; w = w.nextWaiter) {
-                if (w.waitStatus == Node.CONDITION) {
-                    ++n;
-                }
-            }
-            return n;
-        }
-
-        /**
-         * 获取条件队列中的所有线程集合
-         */
-        protected final Collection<Thread> getWaitingThreads() {
-            if (!isHeldExclusively()) {
-                throw new IllegalMonitorStateException();
-            }
-            ArrayList<Thread> list = new ArrayList<Thread>();
-            for (Node w = firstWaiter; w != null; w = w.nextWaiter) {
-                if (w.waitStatus == Node.CONDITION) {
-                    Thread t = w.thread;
-                    if (t != null) {
-                        list.add(t);
-                    }
-                }
-            }
-            return list;
-        }
     }
 
     /*-------------------------------------------CAS操作---------------------------------------------*/
@@ -1484,52 +705,15 @@ public abstract class AbstractQueuedSynchronizer extends AbstractOwnableSynchron
 
     private static final long stateOffset;
 
-    private static final long headOffset;
-
-    private static final long tailOffset;
-
-    private static final long waitStatusOffset;
-
-    private static final long nextOffset;
+    private static final long wipOffset;
 
     static {
         try {
             stateOffset = unsafe.objectFieldOffset(AbstractQueuedSynchronizer.class.getDeclaredField("state"));
-            headOffset = unsafe.objectFieldOffset(AbstractQueuedSynchronizer.class.getDeclaredField("head"));
-            tailOffset = unsafe.objectFieldOffset(AbstractQueuedSynchronizer.class.getDeclaredField("tail"));
-            waitStatusOffset = unsafe.objectFieldOffset(Node.class.getDeclaredField("waitStatus"));
-            nextOffset = unsafe.objectFieldOffset(Node.class.getDeclaredField("next"));
+            wipOffset = unsafe.objectFieldOffset(AsyncNode.class.getDeclaredField("wip"));
 
         } catch (Exception ex) {
             throw new Error(ex);
         }
     }
-
-    /**
-     * CAS 设置头结点 仅用于enq()方法
-     */
-    private final boolean compareAndSetHead(Node update) {
-        return unsafe.compareAndSwapObject(this, headOffset, null, update);
-    }
-
-    /**
-     * CAS 设置尾节点 仅用于enq()方法
-     */
-    private final boolean compareAndSetTail(Node expect, Node update) {
-        return unsafe.compareAndSwapObject(this, tailOffset, expect, update);
-    }
-
-    /**
-     * CAS设置等待状态
-     */
-    private static final boolean compareAndSetWaitStatus(Node node, int expect, int update) {
-        return unsafe.compareAndSwapInt(node, waitStatusOffset, expect, update);
-    }
-
-    /**
-     * CAS设置后继节点
-     */
-    private static final boolean compareAndSetNext(Node node, Node expect, Node update) {
-        return unsafe.compareAndSwapObject(node, nextOffset, expect, update);
-    }
 }
\ No newline at end of file
@@ -0,0 +1,126 @@
+package com.xz.concurrent.locks;
+
+import java.util.function.Supplier;
+
+/**
+ * 自适应的读区段：根据乐观读的失败率在乐观读和悲观读锁之间切换
+ * 1.乐观模式：tryOptimisticRead()执行读区段 validate()失败后改用readLock()重新执行
+ * 2.每WINDOW次乐观读统计一次失败率 超过阈值切换到悲观模式
+ * 3.悲观模式：直接使用readLock()执行 PESSIMISTIC_RUNS次后重新尝试乐观模式
+ * 4.窗口计数没有同步 只是近似统计 不影响读区段的正确性
+ * 5.与乐观读相同 读区段可能读到不一致的数据 只能读取 不能根据读到的数据产生副作用
+ * <pre>{@code
+ * AdaptiveReadSection reads = new AdaptiveReadSection(lock, 0.2);
+ * double d = reads.read(() -> Math.sqrt(x * x + y * y));
+ * }</pre>
+ */
+public class AdaptiveReadSection {
+
+    /**
+     * 统计失败率的窗口大小
+     */
+    private static final int WINDOW = 1 << 6;
+
+    /**
+     * 进入悲观模式后的执行次数
+     */
+    private static final int PESSIMISTIC_RUNS = 1 << 8;
+
+    private final StampedLock lock;
+
+    /**
+     * 失败次数阈值 窗口内失败次数超过该值切换到悲观模式
+     */
+    private final int failureLimit;
+
+    /**
+     * 悲观模式剩余的执行次数 0为乐观模式
+     */
+    private volatile int pessimisticRuns;
+
+    /**
+     * 当前窗口的乐观读次数
+     */
+    private int windowAttempts;
+
+    /**
+     * 当前窗口的失败次数
+     */
+    private int windowFailures;
+
+    /**
+     * @param lock StampedLock
+     * @param failureThreshold 失败率阈值 (0, 1]
+     */
+    public AdaptiveReadSection(StampedLock lock, double failureThreshold) {
+        if (lock == null) {
+            throw new NullPointerException();
+        }
+        if (!(failureThreshold > 0.0 && failureThreshold <= 1.0)) {
+            throw new IllegalArgumentException();
+        }
+        this.lock = lock;
+        this.failureLimit = (int) (failureThreshold * WINDOW);
+    }
+
+    /**
+     * 执行读区段
+     */
+    public <T> T read(Supplier<T> section) {
+        int r = pessimisticRuns;
+        if (r > 0) {
+            pessimisticRuns = r - 1;
+            return readLocked(section);
+        }
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0L) {
+            T result = section.get();
+            if (lock.validate(stamp)) {
+                record(false);
+                return result;
+            }
+        }
+        record(true);
+        return readLocked(section);
+    }
+
+    /**
+     * 当前是否处于悲观模式
+     */
+    public boolean isPessimistic() {
+        return pessimisticRuns > 0;
+    }
+
+    /**
+     * 悲观读
+     */
+    private <T> T readLocked(Supplier<T> section) {
+        long stamp = lock.readLock();
+        try {
+            return section.get();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * 记录一次乐观读的结果 窗口结束时判断是否切换到悲观模式
+     */
+    private void record(boolean failed) {
+        int f = failed ? windowFailures + 1 : windowFailures;
+        int a = windowAttempts + 1;
+        if (a >= WINDOW) {
+            if (f > failureLimit) {
+                pessimisticRuns = PESSIMISTIC_RUNS;
+            }
+            a = f = 0;
+        }
+        windowAttempts = a;
+        windowFailures = f;
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + (isPessimistic() ? "[Pessimistic]" : "[Optimistic]");
+    }
+}
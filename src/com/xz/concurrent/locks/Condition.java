@@ -2,6 +2,7 @@ package com.xz.concurrent.locks;
 
 import java.util.Date;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
 
 /**
  * 有界阻塞队列
@@ -40,10 +41,13 @@ import java.util.concurrent.TimeUnit;
  *      }
  *  }
  * }
+ * 扩展：继承java.util.concurrent.locks.Condition 可以作为Lock.newCondition()的返回值
+ * 在signal()/signalAll()之外支持批量唤醒和按key唤醒 减少signalAll()带来的惊群：
+ * 被唤醒的线程都要重新竞争锁 大部分线程拿到锁后发现条件仍不满足又继续等待
  * @author Doug Lea
  * @since 1.5
  */
-public interface Condition {
+public interface Condition extends java.util.concurrent.locks.Condition {
 
     /**
      * 当前线程进行等待 同时释放锁 其他线程中使用single() singleAll()线程重新获取锁并继续执行
@@ -110,5 +114,33 @@ public interface Condition {
      * 唤醒所有等待的线程
      */
     void signalAll();
+
+    /**
+     * 按等待顺序唤醒最多n个线程
+     * @return 实际唤醒的线程数
+     */
+    int signalN(int n);
+
+    /**
+     * 同await() 等待时附带key 用于signalIf()判断是否唤醒 例如：需要的资源数量
+     */
+    void awaitKeyed(Object key) throws InterruptedException;
+
+    /**
+     * 同awaitNanos() 等待时附带key
+     */
+    long awaitKeyedNanos(Object key, long nanosTimeout) throws InterruptedException;
+
+    /**
+     * 按等待顺序唤醒最多n个key满足predicate的线程 不满足的线程继续等待
+     * 没有附带key的等待线程 predicate的参数为null
+     * <pre>{@code
+     * // 释放了permits个资源 只唤醒需要的数量不超过permits的线程
+     * final int available = permits;
+     * cond.signalIf(k -> (Integer) k <= available, Integer.MAX_VALUE);
+     * }</pre>
+     * @return 实际唤醒的线程数
+     */
+    int signalIf(Predicate<Object> predicate, int n);
 }
 
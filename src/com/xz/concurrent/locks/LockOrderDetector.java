@@ -0,0 +1,274 @@
+package com.xz.concurrent.locks;
+
+import com.xz.concurrent.collection.ConcurrentHashMap;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 锁顺序检测 默认关闭 通过-Dcom.xz.concurrent.locks.lockOrderDetection=true开启
+ * 1.记录每个线程持有的锁 持有A时阻塞获取B 记录边A->B 所有线程的边组成全局的锁顺序图
+ * 2.新增边A->B时检查图中是否存在B->...->A的路径 存在说明有线程以相反的顺序获取过这些锁
+ * 不需要死锁真正发生就能发现 发现后通知Listener 默认打印到System.err
+ * 3.采样：-Dcom.xz.concurrent.locks.lockOrderSampleRate=N 每N次阻塞获取检查一次(N向上取2的幂) 默认每次都检查
+ * 持有锁的记录和等待记录不采样
+ * 4.findDeadlockedThreads()：根据等待记录和锁的持有线程(exclusiveOwnerThread)查找已经发生的死锁
+ * AQS实现的锁同时检查等待线程是否在同步队列中
+ * 5.覆盖ReentrantLock、ReentrantReadWriteLock(读锁和写锁视为同一个锁)、StampedLock
+ * *tryLock()不会阻塞 不记录边 成功后作为持有的锁
+ * *StampedLock和读锁没有持有线程 只参与锁顺序检查 不参与findDeadlockedThreads()
+ * *由其他线程释放的锁(StampedLock、异步获取的ReentrantLock)不会从获取线程的记录中移除 不要在这种用法下开启
+ * 6.锁顺序图强引用所有出现过的锁 长时间运行时通过reset()清空
+ * 7.关闭时所有方法直接返回 ENABLED为static final JIT会消除检查
+ */
+public final class LockOrderDetector {
+
+    /**
+     * 是否开启检测
+     */
+    static final boolean ENABLED = Boolean.getBoolean("com.xz.concurrent.locks.lockOrderDetection");
+
+    /**
+     * 采样掩码 nextSecondarySeed() & SAMPLE_MASK == 0时检查
+     */
+    private static final int SAMPLE_MASK;
+
+    /**
+     * 锁顺序图 key：先获取的锁 value：持有key时阻塞获取过的锁
+     */
+    private static final ConcurrentHashMap<Object, Set<Object>> ORDER = new ConcurrentHashMap<>();
+
+    /**
+     * 正在阻塞获取锁的线程 value：等待的锁
+     */
+    private static final ConcurrentHashMap<Thread, Object> WAITING = new ConcurrentHashMap<>();
+
+    /**
+     * 当前线程持有的锁 按获取顺序 重入时重复记录
+     */
+    private static final ThreadLocal<ArrayList<Object>> HELD = new ThreadLocal<ArrayList<Object>>() {
+        @Override
+        protected ArrayList<Object> initialValue() {
+            return new ArrayList<>();
+        }
+    };
+
+    /**
+     * 默认回调 打印当前线程的调用栈到System.err
+     */
+    private static final Listener PRINT_LISTENER = new Listener() {
+        @Override
+        public void potentialDeadlock(Thread thread, List<Object> cycle) {
+            new IllegalStateException("Potential deadlock: thread " + thread.getName() + " acquires locks in order "
+                    + cycle).printStackTrace();
+        }
+    };
+
+    private static volatile Listener listener = PRINT_LISTENER;
+
+    static {
+        int rate = Integer.getInteger("com.xz.concurrent.locks.lockOrderSampleRate", 1);
+        int n = 1;
+        while (n < rate && n < (1 << 30)) {
+            n <<= 1;
+        }
+        SAMPLE_MASK = n - 1;
+    }
+
+    private LockOrderDetector() {
+    }
+
+    /**
+     * 发现可能死锁时的回调
+     */
+    public interface Listener {
+
+        /**
+         * 在获取锁的线程中调用 调用时还没有阻塞
+         * @param thread 获取锁的线程
+         * @param cycle 锁顺序环 第一个为当前线程持有的锁 第二个为正在获取的锁 最后回到第一个
+         */
+        void potentialDeadlock(Thread thread, List<Object> cycle);
+    }
+
+    /**
+     * 是否开启检测
+     */
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * 设置回调 null恢复为打印到System.err
+     */
+    public static void setListener(Listener l) {
+        listener = (l != null) ? l : PRINT_LISTENER;
+    }
+
+    /**
+     * 清空锁顺序图 已经报告过的环会再次报告
+     */
+    public static void reset() {
+        ORDER.clear();
+    }
+
+    /*----------------------------锁的回调------------------------------*/
+
+    /**
+     * 阻塞获取锁之前调用：记录等待 采样检查锁顺序
+     */
+    static void beforeAcquire(Object lock) {
+        if (!ENABLED) {
+            return;
+        }
+        ArrayList<Object> held = HELD.get();
+        //重入不会改变锁顺序
+        if (held.contains(lock)) {
+            return;
+        }
+        Thread current = Thread.currentThread();
+        if (!held.isEmpty() && (LockSupport.nextSecondarySeed() & SAMPLE_MASK) == 0) {
+            for (int i = 0, n = held.size(); i < n; i++) {
+                Object h = held.get(i);
+                if (h != lock && ORDER.computeIfAbsent(h, k -> ConcurrentHashMap.newKeySet()).add(lock)) {
+                    //新的边 检查是否形成环
+                    List<Object> path = findPath(lock, h);
+                    if (path != null) {
+                        List<Object> cycle = new ArrayList<>(path.size() + 1);
+                        cycle.add(h);
+                        cycle.addAll(path);
+                        listener.potentialDeadlock(current, Collections.unmodifiableList(cycle));
+                    }
+                }
+            }
+        }
+        WAITING.put(current, lock);
+    }
+
+    /**
+     * 阻塞获取锁之后调用(包括超时、中断)：移除等待 获取成功则记录持有
+     */
+    static void afterAcquire(Object lock, boolean acquired) {
+        if (!ENABLED) {
+            return;
+        }
+        WAITING.remove(Thread.currentThread());
+        if (acquired) {
+            HELD.get().add(lock);
+        }
+    }
+
+    /**
+     * 非阻塞获取锁(tryLock)成功后调用
+     */
+    static void acquired(Object lock) {
+        if (!ENABLED) {
+            return;
+        }
+        HELD.get().add(lock);
+    }
+
+    /**
+     * 释放锁之后调用 移除最后一次获取的记录
+     */
+    static void released(Object lock) {
+        if (!ENABLED) {
+            return;
+        }
+        ArrayList<Object> held = HELD.get();
+        for (int i = held.size() - 1; i >= 0; i--) {
+            if (held.get(i) == lock) {
+                held.remove(i);
+                return;
+            }
+        }
+    }
+
+    /*----------------------------检测------------------------------*/
+
+    /**
+     * 广度优先查找锁顺序图中from到to的路径 包含from和to
+     */
+    private static List<Object> findPath(Object from, Object to) {
+        Map<Object, Object> parent = new HashMap<>();
+        ArrayDeque<Object> queue = new ArrayDeque<>();
+        parent.put(from, from);
+        queue.add(from);
+        Object x;
+        while ((x = queue.poll()) != null) {
+            Set<Object> next = ORDER.get(x);
+            if (next == null) {
+                continue;
+            }
+            for (Object y : next) {
+                if (parent.containsKey(y)) {
+                    continue;
+                }
+                parent.put(y, x);
+                if (y == to) {
+                    ArrayList<Object> path = new ArrayList<>();
+                    for (Object p = y; ; p = parent.get(p)) {
+                        path.add(p);
+                        if (p == from) {
+                            break;
+                        }
+                    }
+                    Collections.reverse(path);
+                    return path;
+                }
+                queue.add(y);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 锁的持有线程 等待线程不在AQS同步队列中(还没有入队或者已经获取到锁)返回null
+     */
+    private static Thread ownerOf(Object lock, Thread waiter) {
+        if (lock instanceof AbstractQueuedSynchronizer) {
+            AbstractQueuedSynchronizer aqs = (AbstractQueuedSynchronizer) lock;
+            return aqs.isQueued(waiter) ? aqs.getExclusiveOwnerThread() : null;
+        }
+        return null;
+    }
+
+    /**
+     * 查找已经死锁的线程：线程等待的锁被另一个线程持有 该线程又在等待 最终回到自己
+     * 只能发现独占锁之间的死锁 结果是一个时间点附近的近似值
+     * @return 处于死锁环上的线程 没有返回空列表
+     */
+    public static List<Thread> findDeadlockedThreads() {
+        if (!ENABLED) {
+            return Collections.emptyList();
+        }
+        ArrayList<Thread> result = new ArrayList<>();
+        for (Thread start : WAITING.keySet()) {
+            if (result.contains(start)) {
+                continue;
+            }
+            ArrayList<Thread> chain = new ArrayList<>();
+            Thread t = start;
+            Object lock;
+            while (t != null && (lock = WAITING.get(t)) != null) {
+                int i = chain.indexOf(t);
+                if (i >= 0) {
+                    for (Thread d : chain.subList(i, chain.size())) {
+                        if (!result.contains(d)) {
+                            result.add(d);
+                        }
+                    }
+                    break;
+                }
+                chain.add(t);
+                t = ownerOf(lock, t);
+            }
+        }
+        return result;
+    }
+}
@@ -6,6 +6,7 @@ package com.xz.concurrent.locks;
  * 调用park()方法时，若将当前线程的permit是1.将permit的值设置为0，并立即返回，若当前线程的permit
  * 是0，那么当前线程就会被阻塞，知道别的线程价格当前线程的permit值设置为1，然后park方法再将它设置为0，并返回。
  * park()：若permit为1 ，则permit减为0，
+ * 阻塞和唤醒默认直接调用Unsafe 可以通过setParker()替换为自定义的Parker(如虚拟线程/协程调度器)
  */
 public class LockSupport {
 
@@ -38,10 +39,43 @@ public class LockSupport {
         }
     }
 
+    /**
+     * 自定义的阻塞唤醒实现 为null时使用Unsafe.park()/unpark()
+     */
+    private static volatile Parker parker;
+
     //构造方法私有化
     private LockSupport() {
     }
 
+    /**
+     * 安装自定义的Parker 传入null恢复默认的Unsafe实现
+     * 需要在同步器产生等待线程之前安装 否则已经阻塞的线程会收不到新Parker的唤醒
+     */
+    public static void setParker(Parker p) {
+        parker = p;
+    }
+
+    /**
+     * 获取当前安装的Parker 默认实现返回null
+     */
+    public static Parker getParker() {
+        return parker;
+    }
+
+    /**
+     * 所有阻塞操作的入口 交给Parker或者Unsafe执行
+     */
+    static void park0(boolean isAbsolute, long time) {
+        Parker p = parker;
+        if (p != null) {
+            p.park(isAbsolute, time);
+        }
+        else {
+            UNSAFE.park(isAbsolute, time);
+        }
+    }
+
     /**
      * 设置线程的parkBlocker属性 此对象在线程受阻塞时被记录，允许监视 工具和诊断工具确定线程受阻塞的原因
      * 替换Thread中parkBlocker属性的值为arg
@@ -58,8 +92,14 @@ public class LockSupport {
      */
     public static void unpark(Thread thread) {
         if (thread != null) {
-            //线程不为空是 通过Unsafe的unpark()唤醒被阻塞的线程
-            UNSAFE.unpark(thread);
+            //线程不为空是 通过Parker或者Unsafe的unpark()唤醒被阻塞的线程
+            Parker p = parker;
+            if (p != null) {
+                p.unpark(thread);
+            }
+            else {
+                UNSAFE.unpark(thread);
+            }
         }
     }
 
@@ -78,7 +118,7 @@ public class LockSupport {
         setBlocker(t, blocker);
         //Unsafe的park方法阻塞线程，isAbsolute = false time = 0表示无限等待,知道调用unpark(Thread thread)唤醒
         //此时已经堵塞 等待unpark()函数调用 继续运行 运行之后会将blocker属性重新设置为null
-        UNSAFE.park(false, 0L);
+        park0(false, 0L);
         //返回后将值设置为null
         setBlocker(t, null);
     }
@@ -90,7 +130,7 @@ public class LockSupport {
         if (nanos > 0) {
             Thread t = Thread.currentThread();
             setBlocker(t, blocker);
-            UNSAFE.park(false, nanos);
+            park0(false, nanos);
             setBlocker(t, null);
         }
     }
@@ -101,7 +141,7 @@ public class LockSupport {
     public static void parkUntil(Object blocker, long deadline) {
         Thread t = Thread.currentThread();
         setBlocker(t, blocker);
-        UNSAFE.park(true, deadline);
+        park0(true, deadline);
         setBlocker(t, null);
     }
 
@@ -125,7 +165,7 @@ public class LockSupport {
      * 该调用不合逻辑的返回
      */
     public static void park() {
-        UNSAFE.park(false, 0L);
+        park0(false, 0L);
     }
 
     /**
@@ -133,7 +173,7 @@ public class LockSupport {
      */
     public static void parkNanos(long nanos) {
         if (nanos > 0) {
-            UNSAFE.park(false, nanos);
+            park0(false, nanos);
         }
     }
 
@@ -141,7 +181,7 @@ public class LockSupport {
      * 在指定的时限前禁用当前线程 除非许可可用
      */
     public static void parkUntil(long deadline) {
-        UNSAFE.park(true, deadline);
+        park0(true, deadline);
     }
 
     /**
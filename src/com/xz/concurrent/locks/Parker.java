@@ -0,0 +1,28 @@
+package com.xz.concurrent.locks;
+
+/**
+ * 线程阻塞与唤醒的抽象 LockSupport的park()/unpark()最终都会交给Parker执行
+ * 1.默认实现直接调用Unsafe.park()/unpark() 阻塞的是当前(载体)线程
+ * 2.通过LockSupport.setParker()安装自定义实现 可以将阻塞交给外部调度器
+ * 例如：挂起协程/虚拟线程的continuation 而不是占住载体线程
+ * 3.AQS、Condition、StampedLock的等待都经过LockSupport 所以替换Parker后这些同步器的等待者都会使用新的调度方式
+ * 4.实现需要满足Unsafe.park()的语义：
+ * *unpark()先于park()发生时 下一次park()立即返回(许可最多为1)
+ * *park()允许虚假返回 调用者都会在循环中重新检查条件
+ * *线程被中断时park()需要返回
+ */
+public interface Parker {
+
+    /**
+     * 阻塞当前线程
+     * @param isAbsolute true：time为绝对时间(毫秒) false：time为相对时间(纳秒) 0表示无限等待
+     * @param time 阻塞时间
+     */
+    void park(boolean isAbsolute, long time);
+
+    /**
+     * 唤醒指定线程 若线程没有阻塞 则它的下一次park()不会阻塞
+     * @param thread 非空线程
+     */
+    void unpark(Thread thread);
+}
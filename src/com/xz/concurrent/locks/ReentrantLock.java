@@ -1,10 +1,9 @@
 package com.xz.concurrent.locks;
 
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.AbstractQueuedSynchronizer;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
+import java.util.function.Supplier;
 
 /**
  * 1.简介：独占锁 可重入锁 分为公平模式和非公平模式
@@ -12,6 +11,11 @@ import java.util.concurrent.locks.Lock;
  * 该线程就会跳过队列中所有的等待线程而获取锁，也仅是在在锁可用状态 要是不可用 还是要进入队列排队
  * * 在恢复一个被挂起的线程与该线程真正运行之前存在着严重的延迟。
  * 3.每次加锁  将锁的state累加1 ，每次释放锁 state减1
+ * 4.乐观读：锁每次被完全释放时版本号加1 tryOptimisticRead()在锁空闲时返回版本号 validate()检查期间锁没有被获取过
+ * 读多写少的临界区可以不修改state直接读取 冲突时再获取锁 用法与StampedLock的乐观读相同
+ * 5.有界插队模式：new ReentrantLock(maxBarges, maxWait, unit) 允许新线程插队 吞吐量接近非公平锁
+ * 但队列中有等待线程时 插队次数达到maxBarges或者从第一次插队起超过maxWait 之后的获取必须排队 直到队首线程获取到锁
+ * 通过getBargeCount()、getForcedHandoffCount()、getMaxStarvationNanos()观察饥饿情况
  */
 public class ReentrantLock implements Lock, java.io.Serializable {
 
@@ -31,6 +35,18 @@ public class ReentrantLock implements Lock, java.io.Serializable {
 
         private static final long serialVersionUID = -5179523762034025860L;
 
+        /**
+         * 版本号 锁被完全释放时由持有者在setState(0)之前加1 只有持有者写入
+         * volatile：tryOptimisticRead()和validate()不持有锁 普通读取可能被JIT缓存或重排 读到旧版本号而误判没有写入
+         */
+        private transient volatile int version;
+
+        /**
+         * 锁被异步获取 由tryAcquireAsync()在CAS成功后设置 完全释放时清除
+         * 持有线程为null不能说明是异步持有：同步获取在CAS和setExclusiveOwnerThread()之间持有线程也为null
+         */
+        private transient volatile boolean asyncHeld;
+
         /**
          * 加锁  需要实现类重现实现
          */
@@ -66,6 +82,23 @@ public class ReentrantLock implements Lock, java.io.Serializable {
             return false;
         }
 
+        /**
+         * 异步获取锁 不可重入 获取成功后锁不属于任何线程(持有线程为null)
+         * 公平锁需要判断是否有前驱 推进异步节点时节点的thread为当前线程 所以hasQueuedPredecessors()可以正确判断
+         */
+        @Override
+        protected final boolean tryAcquireAsync(int acquires) {
+            if (getState() == 0 && !(this instanceof FairSync && hasQueuedPredecessors())
+                    && !(this instanceof BoundedBargingSync && ((BoundedBargingSync) this).handoff
+                    && hasQueuedPredecessors())
+                    && compareAndSetState(0, acquires)) {
+                setExclusiveOwnerThread(null);
+                asyncHeld = true;
+                return true;
+            }
+            return false;
+        }
+
         /**
          * 释放锁
          * @param releases
@@ -74,8 +107,8 @@ public class ReentrantLock implements Lock, java.io.Serializable {
         @Override
         protected final boolean tryRelease(int releases) {
             int c = getState() - releases;
-            //判断当前拥有锁的线程是不是当前线程
-            if (Thread.currentThread() != getExclusiveOwnerThread()) {
+            //判断当前拥有锁的线程是不是当前线程 异步获取的锁没有持有线程 任何线程都可以释放
+            if (Thread.currentThread() != getExclusiveOwnerThread() && !asyncHeld) {
                 throw new IllegalMonitorStateException();
             }
 
@@ -83,6 +116,8 @@ public class ReentrantLock implements Lock, java.io.Serializable {
             if (c == 0) {
                 free = true;
                 setExclusiveOwnerThread(null);
+                asyncHeld = false;
+                ++version;
             }
             //更改锁的状态
             setState(c);
@@ -130,6 +165,21 @@ public class ReentrantLock implements Lock, java.io.Serializable {
             return getState() != 0;
         }
 
+        /**
+         * 锁空闲时返回当前版本号 高32位置1保证stamp不为0 锁被占用返回0
+         */
+        final long tryOptimisticRead() {
+            return getState() == 0 ? (version & 0xFFFFFFFFL) | STAMP_BIT : 0L;
+        }
+
+        /**
+         * 先读state再读version：锁被获取后还没有释放 state != 0 已经释放 则释放前版本号已经加1
+         */
+        final boolean validate(long stamp) {
+            U.loadFence();
+            return stamp != 0L && getState() == 0 && ((version & 0xFFFFFFFFL) | STAMP_BIT) == stamp;
+        }
+
         private void readObject(java.io.ObjectInputStream s) throws java.io.IOException, ClassNotFoundException {
             s.defaultReadObject();
             setState(0);
@@ -229,6 +279,156 @@ public class ReentrantLock implements Lock, java.io.Serializable {
         }
     }
 
+    /*-----------------------------有界插队的实现-------------------------*/
+
+    /**
+     * 有界插队
+     * 1.锁空闲时和非公平锁一样直接CAS获取 成功后若队列中有等待线程 记为一次插队
+     * 2.插队次数达到maxBarges 或者距离第一次插队超过maxWaitNanos 进入handoff状态
+     * handoff状态下和公平锁一样 有前驱就排队 队首线程获取锁后清空计数 恢复插队
+     * 3.队首线程从第一次被插队到获取锁最多经过maxBarges次插队 或者maxWaitNanos加上一次持有锁的时间
+     * 4.插队计数只在持有锁时读写 通过state的volatile读写保证可见性
+     * handoff在不持有锁时读取(插队之前) 所以是volatile 统计字段为volatile 可以在不持有锁时读取
+     */
+    static final class BoundedBargingSync extends Sync {
+
+        private static final long serialVersionUID = -4582950390917162734L;
+
+        /**
+         * 最大连续插队次数
+         */
+        private final int maxBarges;
+
+        /**
+         * 从第一次插队起允许插队的时间
+         */
+        private final long maxWaitNanos;
+
+        /**
+         * 队首线程获取锁之前的插队次数
+         */
+        private transient int barges;
+
+        /**
+         * 第一次插队的时间
+         */
+        private transient long bargeStart;
+
+        /**
+         * 禁止插队 由持有锁的线程设置和清除 没有持有锁的线程在CAS state之前读取
+         * volatile：普通字段的写入与插队线程之间没有happens-before 所有线程都可能一直读到false 插队次数没有上限
+         * 只在慢速路径写入 快速路径多一次volatile读 x86上是普通的load
+         */
+        transient volatile boolean handoff;
+
+        /**
+         * 统计：插队总次数
+         */
+        private transient volatile long bargeCount;
+
+        /**
+         * 统计：达到上限强制交给队首线程的次数
+         */
+        private transient volatile long forcedHandoffs;
+
+        /**
+         * 统计：队首线程从第一次被插队到获取锁的最长时间
+         */
+        private transient volatile long maxStarvationNanos;
+
+        BoundedBargingSync(int maxBarges, long maxWaitNanos) {
+            this.maxBarges = maxBarges;
+            this.maxWaitNanos = maxWaitNanos;
+        }
+
+        /**
+         * 快速路径和非公平锁相同 只多一次handoff的volatile读
+         */
+        @Override
+        final void lock() {
+            if (!handoff && compareAndSetState(0, 1)) {
+                setExclusiveOwnerThread(Thread.currentThread());
+                if (hasQueuedThreads()) {
+                    onBarge();
+                }
+            }
+            else {
+                acquire(1);
+            }
+        }
+
+        @Override
+        protected final boolean tryAcquire(int acquires) {
+            final Thread current = Thread.currentThread();
+            int c = getState();
+            if (c == 0) {
+                //没有前驱：队列为空或者当前线程是队首
+                if (!hasQueuedPredecessors()) {
+                    if (compareAndSetState(0, acquires)) {
+                        setExclusiveOwnerThread(current);
+                        if (barges != 0) {
+                            onHandoff();
+                        }
+                        return true;
+                    }
+                }
+                else if (!handoff && compareAndSetState(0, acquires)) {
+                    setExclusiveOwnerThread(current);
+                    onBarge();
+                    return true;
+                }
+            }
+            else if (current == getExclusiveOwnerThread()) {
+                int nextc = c + acquires;
+                if (nextc < 0) {
+                    throw new Error("Maximum lock count exceeded");
+                }
+                setState(nextc);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * 插队成功后调用 持有锁
+         */
+        private void onBarge() {
+            bargeCount++;
+            long now = System.nanoTime();
+            if (barges++ == 0) {
+                bargeStart = now;
+            }
+            if (barges >= maxBarges || now - bargeStart >= maxWaitNanos) {
+                handoff = true;
+                forcedHandoffs++;
+            }
+        }
+
+        /**
+         * 队首线程获取到锁后调用 持有锁 清空插队计数
+         */
+        private void onHandoff() {
+            long waited = System.nanoTime() - bargeStart;
+            if (waited > maxStarvationNanos) {
+                maxStarvationNanos = waited;
+            }
+            barges = 0;
+            handoff = false;
+        }
+
+        final long getBargeCount() {
+            return bargeCount;
+        }
+
+        final long getForcedHandoffCount() {
+            return forcedHandoffs;
+        }
+
+        final long getMaxStarvationNanos() {
+            return maxStarvationNanos;
+        }
+    }
+
     /*--------------------------------构造方法--------------------------------*/
 
     /**
@@ -245,6 +445,18 @@ public class ReentrantLock implements Lock, java.io.Serializable {
         sync = fair ? new FairSync() : new NonfairSync();
     }
 
+    /**
+     * 有界插队模式
+     * @param maxBarges 队列中有等待线程时最多连续插队的次数 1表示有等待线程时只允许插队一次
+     * @param maxWait 从第一次插队起允许插队的时间
+     */
+    public ReentrantLock(int maxBarges, long maxWait, TimeUnit unit) {
+        if (maxBarges < 1 || maxWait < 0L) {
+            throw new IllegalArgumentException();
+        }
+        sync = new BoundedBargingSync(maxBarges, unit.toNanos(maxWait));
+    }
+
     /*---------------------------------功能实现----------------------------------*/
 
 
@@ -259,7 +471,9 @@ public class ReentrantLock implements Lock, java.io.Serializable {
      */
     @Override
     public void lock() {
+        LockOrderDetector.beforeAcquire(sync);
         sync.lock();
+        LockOrderDetector.afterAcquire(sync, true);
     }
 
     /**
@@ -278,7 +492,14 @@ public class ReentrantLock implements Lock, java.io.Serializable {
      */
     @Override
     public void lockInterruptibly() throws InterruptedException {
-        sync.acquireInterruptibly(1);
+        LockOrderDetector.beforeAcquire(sync);
+        boolean acquired = false;
+        try {
+            sync.acquireInterruptibly(1);
+            acquired = true;
+        } finally {
+            LockOrderDetector.afterAcquire(sync, acquired);
+        }
     }
 
     /**
@@ -288,7 +509,11 @@ public class ReentrantLock implements Lock, java.io.Serializable {
      */
     @Override
     public boolean tryLock() {
-        return sync.nonfairTryAcquire(1);
+        if (sync.nonfairTryAcquire(1)) {
+            LockOrderDetector.acquired(sync);
+            return true;
+        }
+        return false;
     }
 
     /**
@@ -296,7 +521,31 @@ public class ReentrantLock implements Lock, java.io.Serializable {
      */
     @Override
     public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
-        return sync.tryAcquireNanos(1, unit.toNanos(timeout));
+        LockOrderDetector.beforeAcquire(sync);
+        boolean acquired = false;
+        try {
+            return acquired = sync.tryAcquireNanos(1, unit.toNanos(timeout));
+        } finally {
+            LockOrderDetector.afterAcquire(sync, acquired);
+        }
+    }
+
+    /**
+     * 异步获取锁 不阻塞调用线程 锁可用时返回已完成的future
+     * 否则在同步队列中排队 由释放锁的线程代为获取并完成future
+     * 异步获取的锁不属于任何线程：不可重入 不能使用Condition 可以在任意线程调用unlock()释放
+     * <pre>{@code
+     * lock.lockAsync().thenRun(() -> {
+     *     try {
+     *         // 临界区
+     *     } finally {
+     *         lock.unlock();
+     *     }
+     * });
+     * }</pre>
+     */
+    public CompletableFuture<Void> lockAsync() {
+        return sync.acquireAsync(1);
     }
 
     /**
@@ -306,16 +555,64 @@ public class ReentrantLock implements Lock, java.io.Serializable {
     @Override
     public void unlock() {
         sync.release(1);
+        LockOrderDetector.released(sync);
     }
 
     /**
-     * 获取锁对应的Condition对象
+     * 获取锁对应的Condition对象 支持signalN()和按key唤醒
      */
     @Override
     public Condition newCondition() {
         return sync.newCondition();
     }
 
+    /*-----------------乐观读--------------------*/
+
+    /**
+     * 获取乐观读的stamp 锁被占用(包括当前线程持有)时返回0
+     */
+    public long tryOptimisticRead() {
+        return sync.tryOptimisticRead();
+    }
+
+    /**
+     * 检查获取stamp之后锁是否被获取过 stamp为0返回false
+     * 读取的数据只有在validate()返回true之后才能使用
+     */
+    public boolean validate(long stamp) {
+        return sync.validate(stamp);
+    }
+
+    /**
+     * 乐观执行只读的临界区 冲突时获取锁再执行一次
+     * 1.section可能读到不一致的数据 不能修改共享状态 也不能因为不一致的数据抛出异常或死循环
+     * 2.乐观执行抛出的异常在validate失败时被忽略 改为加锁重新执行
+     * <pre>{@code
+     * int size = lock.optimisticRead(() -> this.size);
+     * }</pre>
+     */
+    public <T> T optimisticRead(Supplier<T> section) {
+        long stamp = sync.tryOptimisticRead();
+        if (stamp != 0L) {
+            try {
+                T result = section.get();
+                if (sync.validate(stamp)) {
+                    return result;
+                }
+            } catch (RuntimeException e) {
+                if (sync.validate(stamp)) {
+                    throw e;
+                }
+            }
+        }
+        lock();
+        try {
+            return section.get();
+        } finally {
+            unlock();
+        }
+    }
+
     /*-----------------功能方法--------------------*/
 
     /**
@@ -369,6 +666,34 @@ public class ReentrantLock implements Lock, java.io.Serializable {
         return sync instanceof FairSync;
     }
 
+    /**
+     * 判断是否为有界插队模式
+     */
+    public final boolean isBoundedBarging() {
+        return sync instanceof BoundedBargingSync;
+    }
+
+    /**
+     * 有界插队模式下 插队到等待线程之前获取锁的总次数 其他模式返回0
+     */
+    public final long getBargeCount() {
+        return sync instanceof BoundedBargingSync ? ((BoundedBargingSync) sync).getBargeCount() : 0L;
+    }
+
+    /**
+     * 有界插队模式下 插队达到上限后强制交给队首线程的次数 其他模式返回0
+     */
+    public final long getForcedHandoffCount() {
+        return sync instanceof BoundedBargingSync ? ((BoundedBargingSync) sync).getForcedHandoffCount() : 0L;
+    }
+
+    /**
+     * 有界插队模式下 队首线程从第一次被插队到获取锁的最长时间(纳秒) 其他模式返回0
+     */
+    public final long getMaxStarvationNanos() {
+        return sync instanceof BoundedBargingSync ? ((BoundedBargingSync) sync).getMaxStarvationNanos() : 0L;
+    }
+
     /**
      * 获取锁的拥有者的线程
      * 状态 = 0 返回null 说明未上锁
@@ -409,46 +734,55 @@ public class ReentrantLock implements Lock, java.io.Serializable {
     /**
      * 判断是否有等待队列
      */
-    public boolean hasWaiters(Condition condition) {
+    public boolean hasWaiters(java.util.concurrent.locks.Condition condition) {
         if (condition == null) {
             throw new NullPointerException();
         }
-        if (!(condition instanceof java.util.concurrent.locks.AbstractQueuedSynchronizer.ConditionObject)) {
+        if (!(condition instanceof AbstractQueuedSynchronizer.ConditionObject)) {
             throw new IllegalArgumentException("not owner");
         }
-        return sync.hasWaiters((java.util.concurrent.locks.AbstractQueuedSynchronizer.ConditionObject) condition);
+        return sync.hasWaiters((AbstractQueuedSynchronizer.ConditionObject) condition);
     }
 
     /**
      * 获取等待队列的长度
      */
-    public int getWaitQueueLength(Condition condition) {
+    public int getWaitQueueLength(java.util.concurrent.locks.Condition condition) {
         if (condition == null) {
             throw new NullPointerException();
         }
-        if (!(condition instanceof java.util.concurrent.locks.AbstractQueuedSynchronizer.ConditionObject)) {
+        if (!(condition instanceof AbstractQueuedSynchronizer.ConditionObject)) {
             throw new IllegalArgumentException("not owner");
         }
-        return sync
-                .getWaitQueueLength((java.util.concurrent.locks.AbstractQueuedSynchronizer.ConditionObject) condition);
+        return sync.getWaitQueueLength((AbstractQueuedSynchronizer.ConditionObject) condition);
     }
 
     /**
      * 获取条件队列的线程集合
      */
-    protected Collection<Thread> getWaitingThreads(Condition condition) {
+    protected Collection<Thread> getWaitingThreads(java.util.concurrent.locks.Condition condition) {
         if (condition == null) {
             throw new NullPointerException();
         }
-        if (!(condition instanceof java.util.concurrent.locks.AbstractQueuedSynchronizer.ConditionObject)) {
+        if (!(condition instanceof AbstractQueuedSynchronizer.ConditionObject)) {
             throw new IllegalArgumentException("not owner");
         }
         return sync.getWaitingThreads((AbstractQueuedSynchronizer.ConditionObject) condition);
     }
 
+    /**
+     * 乐观读stamp的标志位 保证锁空闲时返回的stamp不为0
+     */
+    private static final long STAMP_BIT = 1L << 32;
+
+    private static final sun.misc.Unsafe U = sun.misc.Unsafe.getUnsafe();
+
     @Override
     public String toString() {
         Thread o = sync.getOwner();
-        return super.toString() + ((o == null) ? "[Unlocked]" : "[Locked by thread " + o.getName() + "]");
+        if (o == null) {
+            return super.toString() + (sync.isLocked() ? "[Locked asynchronously]" : "[Unlocked]");
+        }
+        return super.toString() + "[Locked by thread " + o.getName() + "]";
     }
 }
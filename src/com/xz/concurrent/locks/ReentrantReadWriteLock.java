@@ -21,6 +21,9 @@ import java.util.concurrent.TimeUnit;
  * *写锁状态的获取：S & 0x0000FFFF
  * *写锁状态的增加：S + 1
  * 8.锁降级的过程：拥有写锁，获取读锁，释放写锁
+ * 9.读锁不计数模式：trackReadHolds = false 时不再维护firstReader/cachedHoldCounter/readHolds
+ * 读锁的获取与释放只做state的CAS 没有ThreadLocal查找也没有HoldCounter分配
+ * 代价：读锁不可重入(有写线程排队时重入读锁会死锁) getReadHoldCount()不可用 无法检测其他线程释放读锁
  */
 public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializable {
 
@@ -49,7 +52,17 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
     }
 
     public ReentrantReadWriteLock(boolean fair) {
-        sync = fair ? new ReentrantReadWriteLock.FairSync() : new ReentrantReadWriteLock.NonfairSync();
+        this(fair, true);
+    }
+
+    /**
+     * @param fair 是否是公平锁
+     * @param trackReadHolds 是否记录每个线程持有读锁的次数 false为读锁不计数模式(读锁不可重入)
+     */
+    public ReentrantReadWriteLock(boolean fair, boolean trackReadHolds) {
+        sync = fair ?
+                new ReentrantReadWriteLock.FairSync(trackReadHolds) :
+                new ReentrantReadWriteLock.NonfairSync(trackReadHolds);
         readerLock = new ReentrantReadWriteLock.ReadLock(this);
         writerLock = new ReentrantReadWriteLock.WriteLock(this);
     }
@@ -92,6 +105,11 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
          */
         static final int EXCLUSIVE_MASK = (1 << SHARED_SHIFT) - 1;
 
+        /**
+         * 是否记录每个线程持有读锁的次数 为false时下面四个读锁计数相关的属性均不使用
+         */
+        final boolean trackReadHolds;
+
         /**
          * 本地线程计数器
          */
@@ -113,9 +131,12 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
         private transient int firstReaderHoldCount;
 
         /*------------构造函数------------*/
-        Sync() {
-            //本地线程计数器
-            readHolds = new ReentrantReadWriteLock.Sync.ThreadLocalHoldCounter();
+        Sync(boolean trackReadHolds) {
+            this.trackReadHolds = trackReadHolds;
+            //本地线程计数器 不计数模式下不创建
+            if (trackReadHolds) {
+                readHolds = new ReentrantReadWriteLock.Sync.ThreadLocalHoldCounter();
+            }
             //设置AQS的状态
             setState(getState());
         }
@@ -241,6 +262,9 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
          */
         @Override
         protected final boolean tryReleaseShared(int unused) {
+            if (!trackReadHolds) {
+                return untrackedReleaseShared();
+            }
             Thread current = Thread.currentThread();
             //当前线程为第一个获取读锁的线程 释放两个属性
             if (firstReader == current) {
@@ -276,6 +300,22 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
             }
         }
 
+        /**
+         * 读锁不计数模式下释放读锁 只检查读状态不为0 不区分是哪个线程持有的读锁
+         */
+        private boolean untrackedReleaseShared() {
+            for (; ; ) {
+                int c = getState();
+                if (sharedCount(c) == 0) {
+                    throw unmatchedUnlockException();
+                }
+                int nextc = c - SHARED_UNIT;
+                if (compareAndSetState(c, nextc)) {
+                    return nextc == 0;
+                }
+            }
+        }
+
         private IllegalMonitorStateException unmatchedUnlockException() {
             return new IllegalMonitorStateException("attempt to unlock read lock, not locked by current thread");
         }
@@ -296,6 +336,10 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
             int r = sharedCount(c);
             //获取成功
             if (!readerShouldBlock() && r < MAX_COUNT && compareAndSetState(c, c + SHARED_UNIT)) {
+                //不计数模式 直接返回
+                if (!trackReadHolds) {
+                    return 1;
+                }
                 //代表写锁被线程第一次获取
                 if (r == 0) {
                     //设置第一个读线程
@@ -347,6 +391,10 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
                 }
                 //该线程应该被阻塞
                 else if (readerShouldBlock()) {
+                    //不计数模式 无法判断是否是重入 直接排队
+                    if (!trackReadHolds) {
+                        return -1;
+                    }
                     //当前线程为第一个读线程
                     if (firstReader == current) {
                         // assert firstReaderHoldCount > 0;
@@ -378,6 +426,9 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
                 }
                 //获取成功
                 if (compareAndSetState(c, c + SHARED_UNIT)) {
+                    if (!trackReadHolds) {
+                        return 1;
+                    }
                     //第一个获取读锁的线程
                     if (sharedCount(c) == 0) {
                         firstReader = current;
@@ -456,6 +507,9 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
                 }
                 //获取成功
                 if (compareAndSetState(c, c + SHARED_UNIT)) {
+                    if (!trackReadHolds) {
+                        return true;
+                    }
                     if (r == 0) {
                         firstReader = current;
                         firstReaderHoldCount = 1;
@@ -528,6 +582,9 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
          * @return
          */
         final int getReadHoldCount() {
+            if (!trackReadHolds) {
+                throw new UnsupportedOperationException("read holds are not tracked");
+            }
             if (getReadLockCount() == 0) {
                 return 0;
             }
@@ -551,7 +608,9 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
 
         private void readObject(java.io.ObjectInputStream s) throws java.io.IOException, ClassNotFoundException {
             s.defaultReadObject();
-            readHolds = new ReentrantReadWriteLock.Sync.ThreadLocalHoldCounter();
+            if (trackReadHolds) {
+                readHolds = new ReentrantReadWriteLock.Sync.ThreadLocalHoldCounter();
+            }
             setState(0);
         }
 
@@ -568,6 +627,10 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
 
         private static final long serialVersionUID = -8159625535654395037L;
 
+        NonfairSync(boolean trackReadHolds) {
+            super(trackReadHolds);
+        }
+
         /**
          * 非公平锁的写锁是否应该被阻塞
          * 非公平锁 要是获取写锁(独占锁) 直接获取
@@ -597,6 +660,10 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
 
         private static final long serialVersionUID = -2274990926593161451L;
 
+        FairSync(boolean trackReadHolds) {
+            super(trackReadHolds);
+        }
+
         /**
          * 无论是读锁还是写锁 公平锁必须进入等待队列 只需要判断是否有前驱
          */
@@ -630,7 +697,9 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
          */
         @Override
         public void lock() {
+            LockOrderDetector.beforeAcquire(sync);
             sync.acquireShared(1);
+            LockOrderDetector.afterAcquire(sync, true);
         }
 
         /**
@@ -638,7 +707,14 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
          */
         @Override
         public void lockInterruptibly() throws InterruptedException {
-            sync.acquireSharedInterruptibly(1);
+            LockOrderDetector.beforeAcquire(sync);
+            boolean acquired = false;
+            try {
+                sync.acquireSharedInterruptibly(1);
+                acquired = true;
+            } finally {
+                LockOrderDetector.afterAcquire(sync, acquired);
+            }
         }
 
         /**
@@ -646,7 +722,11 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
          */
         @Override
         public boolean tryLock() {
-            return sync.tryReadLock();
+            if (sync.tryReadLock()) {
+                LockOrderDetector.acquired(sync);
+                return true;
+            }
+            return false;
         }
 
         /**
@@ -654,7 +734,13 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
          */
         @Override
         public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
-            return sync.tryAcquireSharedNanos(1, unit.toNanos(timeout));
+            LockOrderDetector.beforeAcquire(sync);
+            boolean acquired = false;
+            try {
+                return acquired = sync.tryAcquireSharedNanos(1, unit.toNanos(timeout));
+            } finally {
+                LockOrderDetector.afterAcquire(sync, acquired);
+            }
         }
 
         /**
@@ -663,6 +749,7 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
         @Override
         public void unlock() {
             sync.releaseShared(1);
+            LockOrderDetector.released(sync);
         }
 
         /**
@@ -699,12 +786,21 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
 
         @Override
         public void lock() {
+            LockOrderDetector.beforeAcquire(sync);
             sync.acquire(1);
+            LockOrderDetector.afterAcquire(sync, true);
         }
 
         @Override
         public void lockInterruptibly() throws InterruptedException {
-            sync.acquireInterruptibly(1);
+            LockOrderDetector.beforeAcquire(sync);
+            boolean acquired = false;
+            try {
+                sync.acquireInterruptibly(1);
+                acquired = true;
+            } finally {
+                LockOrderDetector.afterAcquire(sync, acquired);
+            }
         }
 
         @Override
@@ -714,7 +810,13 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
 
         @Override
         public boolean tryLock(long timeout, TimeUnit unit) throws InterruptedException {
-            return sync.tryAcquireNanos(1, unit.toNanos(timeout));
+            LockOrderDetector.beforeAcquire(sync);
+            boolean acquired = false;
+            try {
+                return acquired = sync.tryAcquireNanos(1, unit.toNanos(timeout));
+            } finally {
+                LockOrderDetector.afterAcquire(sync, acquired);
+            }
         }
 
         /**
@@ -723,6 +825,7 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
         @Override
         public void unlock() {
             sync.release(1);
+            LockOrderDetector.released(sync);
         }
 
         /**
@@ -802,7 +905,14 @@ public class ReentrantReadWriteLock implements ReadWriteLock, java.io.Serializab
     }
 
     /**
-     * 获取当前线程获取读锁的数量
+     * 是否记录每个线程持有读锁的次数
+     */
+    public final boolean isTrackingReadHolds() {
+        return sync.trackReadHolds;
+    }
+
+    /**
+     * 获取当前线程获取读锁的数量 读锁不计数模式下抛出UnsupportedOperationException
      */
     public int getReadHoldCount() {
         return sync.getReadHoldCount();
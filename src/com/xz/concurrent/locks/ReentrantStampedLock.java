@@ -0,0 +1,622 @@
+package com.xz.concurrent.locks;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+
+/**
+ * 1.在StampedLock的基础上支持写锁重入和写模式下的Condition
+ * 2.乐观读、悲观读直接交给内部的StampedLock 乐观读的快速路径不变
+ * 3.写锁记录持有线程和重入次数 重入时返回同一个stamp 最后一次unlockWrite()才释放内部的写锁
+ * 4.持有写锁的线程调用readLock()视为写锁重入 返回写锁的stamp
+ * 5.Condition只能在持有写锁时使用 await()会完全释放写锁(包括重入次数) 返回前重新获取写锁并恢复重入次数
+ * 重新获取写锁后stamp会改变 之前的stamp失效 通过getWriteStamp()获取新的stamp 或者使用asWriteLock()视图
+ * 6.构造时可以关闭重入 此时持有写锁的线程再次获取写锁抛出IllegalMonitorStateException(StampedLock会死锁)
+ */
+public class ReentrantStampedLock implements java.io.Serializable {
+
+    private static final long serialVersionUID = -2739170524717306217L;
+
+    /*-----------------------------------------属性------------------------------------------*/
+
+    /**
+     * 内部的StampedLock
+     */
+    private final StampedLock lock;
+
+    /**
+     * 写锁是否可以重入
+     */
+    private final boolean reentrant;
+
+    /**
+     * 持有写锁的线程
+     */
+    private transient volatile Thread owner;
+
+    /**
+     * 写锁的重入次数 只有持有线程访问
+     */
+    private transient int holds;
+
+    /**
+     * 内部写锁的stamp 只有持有线程访问
+     */
+    private transient long writeStamp;
+
+    transient ReentrantStampedLock.ReadLockView readLockView;
+
+    transient ReentrantStampedLock.WriteLockView writeLockView;
+
+    /*-----------------------------------------构造方法------------------------------------------*/
+
+    /**
+     * 默认写锁可重入
+     */
+    public ReentrantStampedLock() {
+        this(true);
+    }
+
+    /**
+     * @param reentrant 写锁是否可以重入
+     */
+    public ReentrantStampedLock(boolean reentrant) {
+        this.lock = new StampedLock();
+        this.reentrant = reentrant;
+    }
+
+    /*-----------------------------------------写锁------------------------------------------*/
+
+    /**
+     * 获取写锁 当前线程已持有写锁时重入
+     */
+    public long writeLock() {
+        Thread current = Thread.currentThread();
+        if (owner == current) {
+            return reenter();
+        }
+        return owned(current, lock.writeLock());
+    }
+
+    /**
+     * 响应中断的获取写锁
+     */
+    public long writeLockInterruptibly() throws InterruptedException {
+        Thread current = Thread.currentThread();
+        if (owner == current) {
+            return reenter();
+        }
+        return owned(current, lock.writeLockInterruptibly());
+    }
+
+    /**
+     * 尝试获取写锁 失败返回0 关闭重入时持有线程再次获取返回0
+     */
+    public long tryWriteLock() {
+        Thread current = Thread.currentThread();
+        if (owner == current) {
+            return reentrant ? reenter() : 0L;
+        }
+        long stamp = lock.tryWriteLock();
+        return stamp == 0L ? 0L : owned(current, stamp);
+    }
+
+    /**
+     * 超时获取写锁
+     */
+    public long tryWriteLock(long time, TimeUnit unit) throws InterruptedException {
+        Thread current = Thread.currentThread();
+        if (owner == current) {
+            return reentrant ? reenter() : 0L;
+        }
+        long stamp = lock.tryWriteLock(time, unit);
+        return stamp == 0L ? 0L : owned(current, stamp);
+    }
+
+    /**
+     * 释放一次写锁 重入次数为0时释放内部写锁
+     */
+    public void unlockWrite(long stamp) {
+        if (owner != Thread.currentThread() || stamp != writeStamp) {
+            throw new IllegalMonitorStateException();
+        }
+        if (--holds == 0) {
+            owner = null;
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * 持有写锁时返回当前写锁的stamp 否则返回0
+     */
+    public long getWriteStamp() {
+        return owner == Thread.currentThread() ? writeStamp : 0L;
+    }
+
+    /**
+     * 写锁重入
+     */
+    private long reenter() {
+        if (!reentrant) {
+            throw new IllegalMonitorStateException("write lock is not reentrant");
+        }
+        if (holds == Integer.MAX_VALUE) {
+            throw new Error("Maximum lock count exceeded");
+        }
+        ++holds;
+        return writeStamp;
+    }
+
+    /**
+     * 第一次获取写锁 记录持有线程
+     */
+    private long owned(Thread current, long stamp) {
+        writeStamp = stamp;
+        holds = 1;
+        owner = current;
+        return stamp;
+    }
+
+    /*-----------------------------------------读锁------------------------------------------*/
+
+    /**
+     * 获取读锁 持有写锁的线程视为写锁重入
+     */
+    public long readLock() {
+        if (owner == Thread.currentThread()) {
+            return reenter();
+        }
+        return lock.readLock();
+    }
+
+    /**
+     * 响应中断的获取读锁
+     */
+    public long readLockInterruptibly() throws InterruptedException {
+        if (owner == Thread.currentThread()) {
+            return reenter();
+        }
+        return lock.readLockInterruptibly();
+    }
+
+    /**
+     * 尝试获取读锁
+     */
+    public long tryReadLock() {
+        if (owner == Thread.currentThread()) {
+            return reentrant ? reenter() : 0L;
+        }
+        return lock.tryReadLock();
+    }
+
+    /**
+     * 释放读锁 写锁的stamp按写锁释放
+     */
+    public void unlockRead(long stamp) {
+        if (owner == Thread.currentThread() && stamp == writeStamp) {
+            unlockWrite(stamp);
+        }
+        else {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /*-----------------------------------------乐观读------------------------------------------*/
+
+    /**
+     * 乐观读 直接使用StampedLock的实现
+     */
+    public long tryOptimisticRead() {
+        return lock.tryOptimisticRead();
+    }
+
+    /**
+     * 校验乐观读的stamp
+     */
+    public boolean validate(long stamp) {
+        return lock.validate(stamp);
+    }
+
+    /*-----------------------------------------功能方法------------------------------------------*/
+
+    /**
+     * 写锁是否可以重入
+     */
+    public final boolean isReentrant() {
+        return reentrant;
+    }
+
+    /**
+     * 写锁是否被占用
+     */
+    public boolean isWriteLocked() {
+        return lock.isWriteLocked();
+    }
+
+    /**
+     * 当前线程是否持有写锁
+     */
+    public boolean isWriteLockedByCurrentThread() {
+        return owner == Thread.currentThread();
+    }
+
+    /**
+     * 当前线程持有写锁的次数
+     */
+    public int getWriteHoldCount() {
+        return owner == Thread.currentThread() ? holds : 0;
+    }
+
+    /**
+     * 读锁是否被占用
+     */
+    public boolean isReadLocked() {
+        return lock.isReadLocked();
+    }
+
+    /**
+     * 读锁的数量
+     */
+    public int getReadLockCount() {
+        return lock.getReadLockCount();
+    }
+
+    /**
+     * 创建写模式的Condition
+     */
+    public Condition newCondition() {
+        return new WriteCondition();
+    }
+
+    @Override
+    public String toString() {
+        Thread o = owner;
+        if (o != null) {
+            return super.toString() + "[Write-locked by thread " + o.getName() + "]";
+        }
+        return super.toString() + (lock.isReadLocked() ?
+                "[Read-locks:" + lock.getReadLockCount() + "]" :
+                lock.isWriteLocked() ? "[Write-locked]" : "[Unlocked]");
+    }
+
+    // views
+
+    /**
+     * 读锁视图
+     */
+    public Lock asReadLock() {
+        ReentrantStampedLock.ReadLockView v;
+        return ((v = readLockView) != null ? v : (readLockView = new ReentrantStampedLock.ReadLockView()));
+    }
+
+    /**
+     * 写锁视图 支持newCondition()
+     */
+    public Lock asWriteLock() {
+        ReentrantStampedLock.WriteLockView v;
+        return ((v = writeLockView) != null ? v : (writeLockView = new ReentrantStampedLock.WriteLockView()));
+    }
+
+    /*----------------------------视图类--------------------------------*/
+
+    final class ReadLockView implements Lock {
+
+        @Override
+        public void lock() {
+            readLock();
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            readLockInterruptibly();
+        }
+
+        @Override
+        public boolean tryLock() {
+            return tryReadLock() != 0L;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            if (owner == Thread.currentThread()) {
+                return tryReadLock() != 0L;
+            }
+            return lock.tryReadLock(time, unit) != 0L;
+        }
+
+        @Override
+        public void unlock() {
+            if (owner == Thread.currentThread()) {
+                unlockWrite(writeStamp);
+            }
+            else {
+                lock.unstampedUnlockRead();
+            }
+        }
+
+        @Override
+        public Condition newCondition() {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    final class WriteLockView implements Lock {
+
+        @Override
+        public void lock() {
+            writeLock();
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            writeLockInterruptibly();
+        }
+
+        @Override
+        public boolean tryLock() {
+            return tryWriteLock() != 0L;
+        }
+
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            return tryWriteLock(time, unit) != 0L;
+        }
+
+        @Override
+        public void unlock() {
+            if (owner != Thread.currentThread()) {
+                throw new IllegalMonitorStateException();
+            }
+            unlockWrite(writeStamp);
+        }
+
+        @Override
+        public Condition newCondition() {
+            return ReentrantStampedLock.this.newCondition();
+        }
+    }
+
+    /*----------------------------Condition--------------------------------*/
+
+    /**
+     * 等待状态
+     */
+    private static final int WAITING = 0;
+
+    /**
+     * 被唤醒
+     */
+    private static final int SIGNALLED = 1;
+
+    /**
+     * 超时或者中断取消
+     */
+    private static final int CANCELLED = 2;
+
+    /**
+     * 条件队列节点
+     */
+    static final class Waiter {
+
+        final Thread thread;
+
+        /**
+         * WAITING SIGNALLED CANCELLED 只能从WAITING通过CAS改变一次
+         */
+        volatile int status;
+
+        /**
+         * 条件队列中的后继 持有写锁时访问
+         */
+        Waiter next;
+
+        Waiter(Thread thread) {
+            this.thread = thread;
+        }
+    }
+
+    /**
+     * 写模式的Condition 条件队列只在持有写锁时修改
+     * 与AQS的ConditionObject不同 被唤醒的线程不转移到同步队列 而是直接重新竞争内部的写锁
+     */
+    final class WriteCondition implements Condition {
+
+        /**
+         * 表示退出await()时需要自我中断
+         */
+        private static final int REINTERRUPT = 1;
+
+        /**
+         * 表示退出await()时需要抛出中断异常
+         */
+        private static final int THROW_IE = -1;
+
+        private Waiter firstWaiter;
+
+        private Waiter lastWaiter;
+
+        @Override
+        public void await() throws InterruptedException {
+            doAwait(true, false, 0L);
+        }
+
+        @Override
+        public void awaitUninterruptibly() {
+            try {
+                doAwait(false, false, 0L);
+            } catch (InterruptedException ex) {
+                throw new AssertionError(ex);
+            }
+        }
+
+        @Override
+        public long awaitNanos(long nanosTimeout) throws InterruptedException {
+            final long deadline = System.nanoTime() + nanosTimeout;
+            doAwait(true, true, deadline);
+            return deadline - System.nanoTime();
+        }
+
+        @Override
+        public boolean await(long time, TimeUnit unit) throws InterruptedException {
+            return doAwait(true, true, System.nanoTime() + unit.toNanos(time));
+        }
+
+        @Override
+        public boolean awaitUntil(Date deadline) throws InterruptedException {
+            long nanos = TimeUnit.MILLISECONDS.toNanos(deadline.getTime() - System.currentTimeMillis());
+            return doAwait(true, true, System.nanoTime() + nanos);
+        }
+
+        /**
+         * 唤醒第一个没有取消的等待线程
+         */
+        @Override
+        public void signal() {
+            checkOwner();
+            Waiter w;
+            while ((w = firstWaiter) != null) {
+                if ((firstWaiter = w.next) == null) {
+                    lastWaiter = null;
+                }
+                w.next = null;
+                if (U.compareAndSwapInt(w, STATUS, WAITING, SIGNALLED)) {
+                    LockSupport.unpark(w.thread);
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 唤醒所有等待线程
+         */
+        @Override
+        public void signalAll() {
+            checkOwner();
+            Waiter w = firstWaiter;
+            firstWaiter = lastWaiter = null;
+            while (w != null) {
+                Waiter next = w.next;
+                w.next = null;
+                if (U.compareAndSwapInt(w, STATUS, WAITING, SIGNALLED)) {
+                    LockSupport.unpark(w.thread);
+                }
+                w = next;
+            }
+        }
+
+        /**
+         * 等待的实现
+         * @param interruptible 是否响应中断
+         * @param timed 是否限时
+         * @param deadline 截止时间(System.nanoTime())
+         * @return false表示超时
+         */
+        private boolean doAwait(boolean interruptible, boolean timed, long deadline) throws InterruptedException {
+            if (interruptible && Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            checkOwner();
+            Waiter w = new Waiter(Thread.currentThread());
+            if (lastWaiter == null) {
+                firstWaiter = w;
+            }
+            else {
+                lastWaiter.next = w;
+            }
+            lastWaiter = w;
+            //完全释放写锁
+            int savedHolds = holds;
+            long stamp = writeStamp;
+            holds = 0;
+            owner = null;
+            lock.unlockWrite(stamp);
+
+            boolean timedout = false;
+            int interruptMode = 0;
+            while (w.status == WAITING) {
+                if (timed) {
+                    long nanos = deadline - System.nanoTime();
+                    if (nanos <= 0L) {
+                        //CAS失败说明已经被唤醒
+                        timedout = U.compareAndSwapInt(w, STATUS, WAITING, CANCELLED);
+                        break;
+                    }
+                    LockSupport.parkNanos(this, nanos);
+                }
+                else {
+                    LockSupport.park(this);
+                }
+                if (Thread.interrupted()) {
+                    if (!interruptible) {
+                        interruptMode = REINTERRUPT;
+                    }
+                    else {
+                        //在signal之前中断抛出异常 之后中断补一次自我中断
+                        interruptMode = U.compareAndSwapInt(w, STATUS, WAITING, CANCELLED) ? THROW_IE : REINTERRUPT;
+                        break;
+                    }
+                }
+            }
+            //重新获取写锁 恢复重入次数
+            owned(Thread.currentThread(), lock.writeLock());
+            holds = savedHolds;
+            if (w.status == CANCELLED) {
+                unlinkCancelledWaiters();
+            }
+            if (interruptMode == THROW_IE) {
+                throw new InterruptedException();
+            }
+            else if (interruptMode == REINTERRUPT) {
+                Thread.currentThread().interrupt();
+            }
+            return !timedout;
+        }
+
+        /**
+         * 移除条件队列中已经取消的节点
+         */
+        private void unlinkCancelledWaiters() {
+            Waiter t = firstWaiter;
+            Waiter trail = null;
+            while (t != null) {
+                Waiter next = t.next;
+                if (t.status != WAITING) {
+                    t.next = null;
+                    if (trail == null) {
+                        firstWaiter = next;
+                    }
+                    else {
+                        trail.next = next;
+                    }
+                    if (next == null) {
+                        lastWaiter = trail;
+                    }
+                }
+                else {
+                    trail = t;
+                }
+                t = next;
+            }
+        }
+
+        private void checkOwner() {
+            if (owner != Thread.currentThread()) {
+                throw new IllegalMonitorStateException();
+            }
+        }
+    }
+
+    /*--------------------------------CAS方法------------------------------------*/
+    private static final sun.misc.Unsafe U;
+
+    private static final long STATUS;
+
+    static {
+        try {
+            U = sun.misc.Unsafe.getUnsafe();
+            STATUS = U.objectFieldOffset(Waiter.class.getDeclaredField("status"));
+        } catch (Exception e) {
+            throw new Error(e);
+        }
+    }
+}
@@ -0,0 +1,410 @@
+package com.xz.concurrent.locks;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import sun.misc.Unsafe;
+
+/**
+ * 信号量 基于AQS的共享模式 state为中心池中的许可数量 可以用于连接数限制
+ * 1.非公平模式下许可分为中心池(state)和多个分段池(stripes) 分段池按线程散列 每个分段独占一个缓存行
+ * 队列为空时释放的许可放回当前线程的分段池 获取时先从自己的分段池取 多个线程的获取和释放分散在不同的变量上 避免单个CAS热点
+ * 2.获取顺序：自己的分段池 -> 中心池 -> 把所有分段池的许可收回中心池后再从中心池获取 一次获取多个许可只会走后两步
+ * 3.不会丢失唤醒：
+ * *释放线程先写分段池 再检查同步队列 队列中有等待线程时许可放回中心池并唤醒(tryReleaseShared返回true)
+ * *等待线程先入队 再扫描所有分段池(AQS在阻塞之前会再调用一次tryAcquireShared)
+ * 两边都是volatile读写 所以至少有一方能看到对方 放进分段池的许可一定能被之后入队的线程获取
+ * *收回分段池的许可时若队列中有等待线程 由收回的线程唤醒队首
+ * 4.公平模式和单CPU时不分段 只使用state 公平模式有前驱时必须排队
+ * 5.availablePermits()为中心池与所有分段池的和 并发修改时只是近似值
+ */
+public class Semaphore implements java.io.Serializable {
+
+    private static final long serialVersionUID = -3222578661600680210L;
+
+    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * 分段池数量 不小于CPU数的2的幂 最多64个
+     */
+    private static final int NSTRIPES = (NCPU > 1) ? Math.min(Integer.highestOneBit((NCPU << 1) - 1), 64) : 0;
+
+    /**
+     * 每个分段占用的int数 64字节 相邻分段不在同一个缓存行
+     */
+    private static final int STRIPE_SHIFT = 4;
+
+    private final Sync sync;
+
+    /*----------------------------Sync类-------------------------------*/
+
+    abstract static class Sync extends AbstractQueuedSynchronizer {
+
+        private static final long serialVersionUID = 1192457210091910933L;
+
+        Sync(int permits) {
+            setState(permits);
+        }
+
+        /**
+         * 从中心池获取 许可不足返回负数 成功返回剩余许可
+         */
+        final int tryAcquireCentral(int acquires) {
+            for (; ; ) {
+                int available = getState();
+                int remaining = available - acquires;
+                if (remaining < 0 || compareAndSetState(available, remaining)) {
+                    return remaining;
+                }
+            }
+        }
+
+        /**
+         * 许可放回中心池
+         */
+        final void releaseCentral(int releases) {
+            for (; ; ) {
+                int current = getState();
+                int next = current + releases;
+                //溢出
+                if (next < current) {
+                    throw new Error("Maximum permit count exceeded");
+                }
+                if (compareAndSetState(current, next)) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        protected boolean tryReleaseShared(int releases) {
+            releaseCentral(releases);
+            return true;
+        }
+
+        /**
+         * 减少许可 不唤醒等待线程 中心池可以减为负数
+         */
+        void reducePermits(int reductions) {
+            for (; ; ) {
+                int current = getState();
+                int next = current - reductions;
+                if (next > current) {
+                    throw new Error("Permit count underflow");
+                }
+                if (compareAndSetState(current, next)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * 收回所有许可 返回收回的数量
+         */
+        int drainPermits() {
+            for (; ; ) {
+                int current = getState();
+                if (current == 0 || compareAndSetState(current, 0)) {
+                    return current;
+                }
+            }
+        }
+
+        int availablePermits() {
+            return getState();
+        }
+
+        /**
+         * tryAcquire()使用 公平模式也直接从中心池获取
+         */
+        int nonfairTryAcquireShared(int acquires) {
+            return tryAcquireCentral(acquires);
+        }
+    }
+
+    /*----------------------------非公平 分段-------------------------------*/
+
+    static final class NonfairSync extends Sync {
+
+        private static final long serialVersionUID = -2694183684443567898L;
+
+        /**
+         * 分段池 第i个分段在下标i << STRIPE_SHIFT 为null时不分段
+         */
+        private final int[] stripes;
+
+        private final int mask;
+
+        NonfairSync(int permits) {
+            super(permits);
+            if (NSTRIPES > 0) {
+                stripes = new int[NSTRIPES << STRIPE_SHIFT];
+                mask = NSTRIPES - 1;
+            }
+            else {
+                stripes = null;
+                mask = 0;
+            }
+        }
+
+        /**
+         * 当前线程的分段在数组中的偏移量
+         */
+        private long homeOffset() {
+            int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+            return stripeOffset((h >>> 16) & mask);
+        }
+
+        private static long stripeOffset(int i) {
+            return ABASE + ((long) (i << STRIPE_SHIFT) << ASHIFT);
+        }
+
+        @Override
+        protected int tryAcquireShared(int acquires) {
+            int[] ss = stripes;
+            if (ss != null && acquires == 1) {
+                long o = homeOffset();
+                for (int v; (v = U.getIntVolatile(ss, o)) > 0; ) {
+                    if (U.compareAndSwapInt(ss, o, v, v - 1)) {
+                        return v - 1;
+                    }
+                }
+            }
+            int r = tryAcquireCentral(acquires);
+            if (r >= 0 || ss == null) {
+                return r;
+            }
+            //中心池不足 收回分段池的许可后再试一次
+            if (drainStripes() > 0) {
+                r = tryAcquireCentral(acquires);
+                //收回到中心池的许可可能是其他等待线程没有看到的 当前线程获取失败时也要唤醒队首
+                if (getState() > 0 && hasQueuedThreads()) {
+                    doReleaseShared();
+                }
+            }
+            return r;
+        }
+
+        @Override
+        protected boolean tryReleaseShared(int releases) {
+            int[] ss = stripes;
+            if (ss != null && releases == 1 && !hasQueuedThreads()) {
+                long o = homeOffset();
+                for (int v; (v = U.getIntVolatile(ss, o)) < Integer.MAX_VALUE; ) {
+                    if (U.compareAndSwapInt(ss, o, v, v + 1)) {
+                        //先写分段 再检查队列 期间有线程入队则移回中心池并唤醒
+                        if (!hasQueuedThreads()) {
+                            return false;
+                        }
+                        drainStripes();
+                        return true;
+                    }
+                }
+            }
+            releaseCentral(releases);
+            return true;
+        }
+
+        /**
+         * 把所有分段池的许可移到中心池 返回移动的数量
+         */
+        private int drainStripes() {
+            int[] ss = stripes;
+            int moved = 0;
+            for (int i = 0; i <= mask; i++) {
+                long o = stripeOffset(i);
+                int v;
+                while ((v = U.getIntVolatile(ss, o)) > 0) {
+                    if (U.compareAndSwapInt(ss, o, v, 0)) {
+                        releaseCentral(v);
+                        moved += v;
+                        break;
+                    }
+                }
+            }
+            return moved;
+        }
+
+        @Override
+        int nonfairTryAcquireShared(int acquires) {
+            return tryAcquireShared(acquires);
+        }
+
+        @Override
+        int drainPermits() {
+            if (stripes != null) {
+                drainStripes();
+            }
+            return super.drainPermits();
+        }
+
+        @Override
+        int availablePermits() {
+            int n = getState();
+            int[] ss = stripes;
+            if (ss != null) {
+                for (int i = 0; i <= mask; i++) {
+                    n += U.getIntVolatile(ss, stripeOffset(i));
+                }
+            }
+            return n;
+        }
+
+        private static final Unsafe U = Unsafe.getUnsafe();
+
+        private static final long ABASE = U.arrayBaseOffset(int[].class);
+
+        private static final int ASHIFT = 31 - Integer.numberOfLeadingZeros(U.arrayIndexScale(int[].class));
+    }
+
+    /*----------------------------公平-------------------------------*/
+
+    static final class FairSync extends Sync {
+
+        private static final long serialVersionUID = 2014338818796000944L;
+
+        FairSync(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected int tryAcquireShared(int acquires) {
+            if (hasQueuedPredecessors()) {
+                return -1;
+            }
+            return tryAcquireCentral(acquires);
+        }
+    }
+
+    /*--------------------------------构造方法--------------------------------*/
+
+    /**
+     * 非公平 分段
+     * @param permits 初始许可数量 可以为负数 需要先释放才能获取
+     */
+    public Semaphore(int permits) {
+        sync = new NonfairSync(permits);
+    }
+
+    public Semaphore(int permits, boolean fair) {
+        sync = fair ? new FairSync(permits) : new NonfairSync(permits);
+    }
+
+    /*---------------------------------获取----------------------------------*/
+
+    /**
+     * 获取一个许可 响应中断
+     */
+    public void acquire() throws InterruptedException {
+        sync.acquireSharedInterruptibly(1);
+    }
+
+    public void acquire(int permits) throws InterruptedException {
+        checkPermits(permits);
+        sync.acquireSharedInterruptibly(permits);
+    }
+
+    public void acquireUninterruptibly() {
+        sync.acquireShared(1);
+    }
+
+    public void acquireUninterruptibly(int permits) {
+        checkPermits(permits);
+        sync.acquireShared(permits);
+    }
+
+    /**
+     * 尝试获取一个许可 公平模式下也会插队
+     */
+    public boolean tryAcquire() {
+        return sync.nonfairTryAcquireShared(1) >= 0;
+    }
+
+    public boolean tryAcquire(int permits) {
+        checkPermits(permits);
+        return sync.nonfairTryAcquireShared(permits) >= 0;
+    }
+
+    /**
+     * 超时获取 响应中断
+     */
+    public boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        return sync.tryAcquireSharedNanos(1, unit.toNanos(timeout));
+    }
+
+    public boolean tryAcquire(int permits, long timeout, TimeUnit unit) throws InterruptedException {
+        checkPermits(permits);
+        return sync.tryAcquireSharedNanos(permits, unit.toNanos(timeout));
+    }
+
+    /**
+     * 异步获取一个许可 不阻塞调用线程 由释放许可的线程代为获取并完成future
+     * 取消future会移出同步队列 若已经获取成功则自动释放
+     */
+    public CompletableFuture<Void> acquireAsync() {
+        return sync.acquireSharedAsync(1);
+    }
+
+    public CompletableFuture<Void> acquireAsync(int permits) {
+        checkPermits(permits);
+        return sync.acquireSharedAsync(permits);
+    }
+
+    /*---------------------------------释放----------------------------------*/
+
+    public void release() {
+        sync.releaseShared(1);
+    }
+
+    public void release(int permits) {
+        checkPermits(permits);
+        sync.releaseShared(permits);
+    }
+
+    /*-----------------功能方法--------------------*/
+
+    /**
+     * 可用的许可数量 近似值
+     */
+    public int availablePermits() {
+        return sync.availablePermits();
+    }
+
+    /**
+     * 获取并返回所有可用的许可
+     */
+    public int drainPermits() {
+        return sync.drainPermits();
+    }
+
+    /**
+     * 减少许可 不阻塞
+     */
+    protected void reducePermits(int reduction) {
+        checkPermits(reduction);
+        sync.reducePermits(reduction);
+    }
+
+    public boolean isFair() {
+        return sync instanceof FairSync;
+    }
+
+    public final boolean hasQueuedThreads() {
+        return sync.hasQueuedThreads();
+    }
+
+    public final int getQueueLength() {
+        return sync.getQueueLength();
+    }
+
+    private static void checkPermits(int permits) {
+        if (permits < 0) {
+            throw new IllegalArgumentException();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[Permits = " + availablePermits() + "]";
+    }
+}
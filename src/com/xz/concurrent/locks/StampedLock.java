@@ -1,5 +1,7 @@
 package com.xz.concurrent.locks;
 
+import com.xz.concurrent.atomic.LongAdder;
+
 import java.util.concurrent.TimeUnit;
 
 /**
@@ -9,6 +11,14 @@ import java.util.concurrent.TimeUnit;
  * 4.乐观读：在读数据时假定没有现成修改数据 读完后再检查版本号是否发生变化 没有变化成功，
  * 5.读锁状态和写锁状态：写锁被占用的标志第8位为1 读锁使用0-7位
  * 6.StampedLock特点：1.内部悲观读锁、写锁 乐观读锁 2.不支持Condition 3.不可重入锁
+ * 7.统计：new StampedLock(true)开启乐观读和readerOverflow的统计 见StampedLockStats
+ * 8.自旋次数：每个实例根据自旋结果自适应调整 自旋后获取成功(避免了park)增加自旋次数 自旋后仍然入队(浪费了自旋)减少自旋次数
+ * 头结点阻塞后很快获取到锁说明多自旋一会就能避免park 增加头结点自旋次数 反之减少
+ * CPU数量考虑cgroup的CPU配额 容器中配额小于可见CPU数时按配额计算
+ * 9.读锁超过RFULL(126)个时 超出部分记录在分段计数器readerOverflow(LongAdder)中 不再通过RBITS独占state逐个累加
+ * *进入溢出模式后state的读锁位固定为RFULL 读锁总数 = RFULL + readerOverflow.sum() (sum可以为负 表示state中记录的读锁已经释放)
+ * *获取：先累加计数器 再检查state没有变化 变化了则等待RBITS独占结束后再撤销
+ * *释放：直接减计数器 读锁总数为0时 通过RBITS独占state 将读锁位清0并唤醒等待者
  */
 public class StampedLock implements java.io.Serializable {
 
@@ -17,25 +27,45 @@ public class StampedLock implements java.io.Serializable {
     /*-----------------------------------------StampedLock属性------------------------------------------*/
 
     /**
-     * 正在运行的进程数
+     * 可用的CPU数 取可见CPU数和cgroup CPU配额的较小值
      */
-    private static final int NCPU = Runtime.getRuntime().availableProcessors();
+    private static final int NCPU = Math.min(Runtime.getRuntime().availableProcessors(), cgroupCpuLimit());
 
     /**
-     * 线程入队前的自旋次数
+     * 线程入队前的自旋次数(初始值)
      */
     private static final int SPINS = (NCPU > 1) ? 1 << 6 : 0;
 
     /**
-     * 队列头结点自旋锁获取锁最大失败次数后再次进入队列
+     * 入队前自旋次数的下限 保留少量自旋以便能重新学习
+     */
+    private static final int MIN_SPINS = (NCPU > 1) ? 1 << 2 : 0;
+
+    /**
+     * 入队前自旋次数的上限
+     */
+    private static final int MAX_SPINS = (NCPU > 1) ? 1 << 10 : 0;
+
+    /**
+     * 队列头结点自旋锁获取锁最大失败次数后再次进入队列(初始值)
      */
     private static final int HEAD_SPINS = (NCPU > 1) ? 1 << 10 : 0;
 
+    /**
+     * 头结点自旋次数的下限
+     */
+    private static final int MIN_HEAD_SPINS = (NCPU > 1) ? 1 << 4 : 0;
+
     /**
      * 重新阻塞前最大自旋次数
      */
     private static final int MAX_HEAD_SPINS = (NCPU > 1) ? 1 << 16 : 0;
 
+    /**
+     * 阻塞后获取锁的等待时间小于该值 说明park/unpark的开销比等待本身更大 应该多自旋
+     */
+    private static final long SHORT_WAIT_NANOS = 20000L;
+
     /**
      * The period for yielding when waiting for overflow spinlock
      */
@@ -100,8 +130,24 @@ public class StampedLock implements java.io.Serializable {
 
     /**
      * 正常情况下读锁的数量为 1-126 超过126 使用readerOverFlow保存超出数量
+     * 分段计数 大量读线程同时溢出时不会在同一个变量上竞争
+     */
+    private transient LongAdder readerOverflow;
+
+    /**
+     * 统计信息 未开启时为null
+     */
+    private final transient StampedLockStats stats;
+
+    /**
+     * 当前实例入队前的自旋次数 在[MIN_SPINS, MAX_SPINS]之间自适应调整 并发修改没有同步 只是近似值
      */
-    private transient int readerOverflow;
+    private transient int spinLimit;
+
+    /**
+     * 当前实例头结点的初始自旋次数 在[MIN_HEAD_SPINS, MAX_HEAD_SPINS]之间自适应调整
+     */
+    private transient int headSpinLimit;
 
     /*---------------------三种视图 对StampedLock方法的封装-----------------------*/
 
@@ -180,7 +226,25 @@ public class StampedLock implements java.io.Serializable {
      * 构造 初始化状态
      */
     public StampedLock() {
+        this(false);
+    }
+
+    /**
+     * @param collectStats 是否开启统计
+     */
+    public StampedLock(boolean collectStats) {
         state = ORIGIN;
+        readerOverflow = new LongAdder();
+        stats = collectStats ? new StampedLockStats() : null;
+        spinLimit = SPINS;
+        headSpinLimit = HEAD_SPINS;
+    }
+
+    /**
+     * 获取统计信息 未开启统计时返回null
+     */
+    public StampedLockStats getStats() {
+        return stats;
     }
     /*--------------------------获取锁------------------------------*/
 
@@ -188,24 +252,29 @@ public class StampedLock implements java.io.Serializable {
      * 获取写锁 独占锁（不可重入锁）
      */
     public long writeLock() {
-
+        LockOrderDetector.beforeAcquire(this);
         long s, next;
         //((s = state) & ABITS) == 0L 表示读锁和写锁均未被获取 CAS将第8位设置为1
-        return ((((s = state) & ABITS) == 0L && U.compareAndSwapLong(this, STATE, s, next = s + WBIT)) ? next :
+        next = ((((s = state) & ABITS) == 0L && U.compareAndSwapLong(this, STATE, s, next = s + WBIT)) ? next :
                 //获取失败进入等待队列
                 acquireWrite(false, 0L));
+        LockOrderDetector.afterAcquire(this, true);
+        return next;
     }
 
     /**
      * 获取读锁
      */
     public long readLock() {
+        LockOrderDetector.beforeAcquire(this);
         long s = state, next;
         //(whead == wtail && (s & ABITS) < RFULL 表示写锁未被占用 并且读数量没有超过最大值
-        return ((whead == wtail && (s & ABITS) < RFULL && U.compareAndSwapLong(this, STATE, s, next = s + RUNIT)) ?
+        next = ((whead == wtail && (s & ABITS) < RFULL && U.compareAndSwapLong(this, STATE, s, next = s + RUNIT)) ?
                 next :
                 //获取失败 添加到等到队列
                 acquireRead(false, 0L));
+        LockOrderDetector.afterAcquire(this, true);
+        return next;
     }
 
     /**
@@ -217,18 +286,23 @@ public class StampedLock implements java.io.Serializable {
     private long acquireWrite(boolean interruptible, long deadline) {
         //node 新增节点 p 尾结点(称为node的前置节点)
         StampedLock.WNode node = null, p;
+        //本次入队前的自旋次数
+        int budget = 0;
         //第一次自旋入队
         for (int spins = -1; ; ) {
             long m, s, ns;
             if ((m = (s = state) & ABITS) == 0L) {
                 if (U.compareAndSwapLong(this, STATE, s, ns = s + WBIT)) {
+                    if (budget > 0) {
+                        spinSucceeded();
+                    }
                     return ns;
                 }
             }
             //自旋次数小于0 重新计算自旋次数
             else if (spins < 0) {
-                //若当前有写锁 并且五队列元素 自旋次数=SPINS 否则为0
-                spins = (m == WBIT && wtail == whead) ? SPINS : 0;
+                //若当前有写锁 并且五队列元素 自旋次数=spinLimit 否则为0
+                spins = budget = (m == WBIT && wtail == whead) ? spinLimit : 0;
             }
 
             else if (spins > 0) {
@@ -254,10 +328,15 @@ public class StampedLock implements java.io.Serializable {
             //尝试更新新的尾结点成功 退出
             else if (U.compareAndSwapObject(this, WTAIL, p, node)) {
                 p.next = node;
+                if (budget > 0) {
+                    spinWasted(budget);
+                }
                 break;
             }
         }
 
+        //第一次阻塞的时间 0表示还没有阻塞
+        long parkedAt = 0L;
         //第二次自旋阻塞并等待唤醒
         for (int spins = -1; ; ) {
             //h= 头结点 np=新增节点的前置节点 pp:前前置节点
@@ -267,7 +346,7 @@ public class StampedLock implements java.io.Serializable {
             if ((h = whead) == p) {
                 //初始化自旋次数
                 if (spins < 0) {
-                    spins = HEAD_SPINS;
+                    spins = headSpinLimit;
                 }
                 //新增自旋次数
                 else if (spins < MAX_HEAD_SPINS) {
@@ -282,6 +361,7 @@ public class StampedLock implements java.io.Serializable {
                             whead = node;
                             //利于GC
                             node.prev = null;
+                            headAcquired(parkedAt);
                             return ns;
                         }
                     }
@@ -297,7 +377,7 @@ public class StampedLock implements java.io.Serializable {
 
                 while ((c = h.cowait) != null) {
                     if (U.compareAndSwapObject(h, WCOWAIT, c, c.cowait) && (w = c.thread) != null) {
-                        U.unpark(w);
+                        LockSupport.unpark(w);
                     }
                 }
             }
@@ -331,7 +411,10 @@ public class StampedLock implements java.io.Serializable {
                     U.putObject(wt, PARKBLOCKER, this);
                     node.thread = wt;
                     if (p.status < 0 && (p != h || (state & ABITS) != 0L) && whead == h && node.prev == p) {
-                        U.park(false, time);  // emulate LockSupport.park
+                        if (parkedAt == 0L) {
+                            parkedAt = parkTime();
+                        }
+                        LockSupport.park0(false, time);  // emulate LockSupport.park
                     }
                     node.thread = null;
                     U.putObject(wt, PARKBLOCKER, null);
@@ -350,6 +433,8 @@ public class StampedLock implements java.io.Serializable {
     private long acquireRead(boolean interruptible, long deadline) {
         //p 指向尾结点
         StampedLock.WNode node = null, p;
+        //本次入队前的自旋次数
+        int budget = 0;
         for (int spins = -1; ; ) {
             StampedLock.WNode h;
             //只有头结点 直接尝试获取
@@ -362,6 +447,9 @@ public class StampedLock implements java.io.Serializable {
                             (m < WBIT && (ns = tryIncReaderOverflow(s))
                                     != 0L)) { //写锁未被占用 但度所以数量超出限制 超出部分存放在readerOverFlow中
                         //获取成功 直接返回
+                        if (budget > 0) {
+                            spinSucceeded();
+                        }
                         return ns;
                     }
                     else if (m >= WBIT) { //写锁被占用 以随机方式探测是否要自旋
@@ -374,10 +462,15 @@ public class StampedLock implements java.io.Serializable {
                             if (spins == 0) {
                                 StampedLock.WNode nh = whead, np = wtail;
                                 if ((nh == h && np == p) || (h = nh) != (p = np)) {
+                                    if (budget > 0) {
+                                        spinWasted(budget);
+                                        budget = 0;
+                                    }
                                     break;
                                 }
                             }
-                            spins = SPINS;
+                            spins = spinLimit;
+                            budget += spins;
                         }
                     }
                 }
@@ -416,7 +509,7 @@ public class StampedLock implements java.io.Serializable {
                     if ((h = whead) != null && (c = h.cowait) != null && U.compareAndSwapObject(h, WCOWAIT, c, c.cowait)
                             && (w = c.thread) != null) // help release
                     {
-                        U.unpark(w);
+                        LockSupport.unpark(w);
                     }
                     if (h == (pp = p.prev) || h == p || pp == null) {
                         long m, s, ns;
@@ -445,7 +538,7 @@ public class StampedLock implements java.io.Serializable {
                         U.putObject(wt, PARKBLOCKER, this);
                         node.thread = wt;
                         if ((h != pp || (state & ABITS) == WBIT) && whead == h && p.prev == pp) {
-                            U.park(false, time);
+                            LockSupport.park0(false, time);
                         }
                         node.thread = null;
                         U.putObject(wt, PARKBLOCKER, null);
@@ -457,12 +550,13 @@ public class StampedLock implements java.io.Serializable {
             }
         }
 
+        long parkedAt = 0L;
         for (int spins = -1; ; ) {
             StampedLock.WNode h, np, pp;
             int ps;
             if ((h = whead) == p) {
                 if (spins < 0) {
-                    spins = HEAD_SPINS;
+                    spins = headSpinLimit;
                 }
                 else if (spins < MAX_HEAD_SPINS) {
                     spins <<= 1;
@@ -478,9 +572,10 @@ public class StampedLock implements java.io.Serializable {
                         node.prev = null;
                         while ((c = node.cowait) != null) {
                             if (U.compareAndSwapObject(node, WCOWAIT, c, c.cowait) && (w = c.thread) != null) {
-                                U.unpark(w);
+                                LockSupport.unpark(w);
                             }
                         }
+                        headAcquired(parkedAt);
                         return ns;
                     }
                     else if (m >= WBIT && LockSupport.nextSecondarySeed() >= 0 && --k <= 0) {
@@ -493,7 +588,7 @@ public class StampedLock implements java.io.Serializable {
                 Thread w;
                 while ((c = h.cowait) != null) {
                     if (U.compareAndSwapObject(h, WCOWAIT, c, c.cowait) && (w = c.thread) != null) {
-                        U.unpark(w);
+                        LockSupport.unpark(w);
                     }
                 }
             }
@@ -524,7 +619,10 @@ public class StampedLock implements java.io.Serializable {
                     U.putObject(wt, PARKBLOCKER, this);
                     node.thread = wt;
                     if (p.status < 0 && (p != h || (state & ABITS) == WBIT) && whead == h && node.prev == p) {
-                        U.park(false, time);
+                        if (parkedAt == 0L) {
+                            parkedAt = parkTime();
+                        }
+                        LockSupport.park0(false, time);
                     }
                     node.thread = null;
                     U.putObject(wt, PARKBLOCKER, null);
@@ -536,6 +634,102 @@ public class StampedLock implements java.io.Serializable {
         }
     }
 
+    /*----------------------------自旋次数自适应------------------------------*/
+
+    /**
+     * 入队前自旋后获取到锁 避免了一次park 增加自旋次数
+     */
+    private void spinSucceeded() {
+        int s = spinLimit;
+        if (s < MAX_SPINS) {
+            spinLimit = s << 1;
+        }
+        StampedLockStats st;
+        if ((st = stats) != null) {
+            st.parksAvoided.increment();
+        }
+    }
+
+    /**
+     * 自旋后仍然需要入队 自旋被浪费 减少自旋次数
+     */
+    private void spinWasted(int spins) {
+        int s = spinLimit;
+        if (s > MIN_SPINS) {
+            spinLimit = s >>> 1;
+        }
+        StampedLockStats st;
+        if ((st = stats) != null) {
+            st.spinsWasted.add(spins);
+        }
+    }
+
+    /**
+     * 头结点获取到锁 根据阻塞后的等待时间调整头结点的自旋次数
+     * @param parkedAt 第一次阻塞的时间 0表示没有阻塞 在自旋中获取到锁
+     */
+    private void headAcquired(long parkedAt) {
+        int s = headSpinLimit;
+        if (parkedAt == 0L) {
+            StampedLockStats st;
+            if ((st = stats) != null) {
+                st.parksAvoided.increment();
+            }
+        }
+        else if (System.nanoTime() - parkedAt < SHORT_WAIT_NANOS) {
+            //等待时间很短 多自旋就能避免阻塞
+            if (s < MAX_HEAD_SPINS) {
+                headSpinLimit = s << 1;
+            }
+        }
+        else if (s > MIN_HEAD_SPINS) {
+            //等待时间很长 自旋没有意义
+            headSpinLimit = s >>> 1;
+        }
+    }
+
+    /**
+     * 记录第一次阻塞的时间 保证返回值非0
+     */
+    private static long parkTime() {
+        long t = System.nanoTime();
+        return t == 0L ? 1L : t;
+    }
+
+    /**
+     * 读取cgroup的CPU配额(v2的cpu.max或v1的cfs_quota_us/cfs_period_us) 向上取整
+     * 没有配额或者读取失败返回Integer.MAX_VALUE
+     */
+    private static int cgroupCpuLimit() {
+        try {
+            long quota, period;
+            java.nio.file.Path v2 = java.nio.file.Paths.get("/sys/fs/cgroup/cpu.max");
+            if (java.nio.file.Files.isReadable(v2)) {
+                String[] parts = new String(java.nio.file.Files.readAllBytes(v2), "US-ASCII").trim().split("\\s+");
+                if ("max".equals(parts[0])) {
+                    return Integer.MAX_VALUE;
+                }
+                quota = Long.parseLong(parts[0]);
+                period = Long.parseLong(parts[1]);
+            }
+            else {
+                java.nio.file.Path q = java.nio.file.Paths.get("/sys/fs/cgroup/cpu/cpu.cfs_quota_us");
+                java.nio.file.Path pd = java.nio.file.Paths.get("/sys/fs/cgroup/cpu/cpu.cfs_period_us");
+                if (!java.nio.file.Files.isReadable(q) || !java.nio.file.Files.isReadable(pd)) {
+                    return Integer.MAX_VALUE;
+                }
+                quota = Long.parseLong(new String(java.nio.file.Files.readAllBytes(q), "US-ASCII").trim());
+                period = Long.parseLong(new String(java.nio.file.Files.readAllBytes(pd), "US-ASCII").trim());
+            }
+            if (quota <= 0L || period <= 0L) {
+                return Integer.MAX_VALUE;
+            }
+            return (int) Math.max(1L, (quota + period - 1) / period);
+        } catch (Exception e) {
+            return Integer.MAX_VALUE;
+        }
+    }
+
     /*----------------------------try系列方法------------------------------*/
     /**
      * try方法：尝试 成功返回非0的stamp值 失败 返回stamp = 0
@@ -545,7 +739,11 @@ public class StampedLock implements java.io.Serializable {
      */
     public long tryWriteLock() {
         long s, next;
-        return ((((s = state) & ABITS) == 0L && U.compareAndSwapLong(this, STATE, s, next = s + WBIT)) ? next : 0L);
+        if (((s = state) & ABITS) == 0L && U.compareAndSwapLong(this, STATE, s, next = s + WBIT)) {
+            LockOrderDetector.acquired(this);
+            return next;
+        }
+        return 0L;
     }
 
     /**
@@ -564,7 +762,10 @@ public class StampedLock implements java.io.Serializable {
             if ((deadline = System.nanoTime() + nanos) == 0L) {
                 deadline = 1L;
             }
-            if ((next = acquireWrite(true, deadline)) != INTERRUPTED) {
+            LockOrderDetector.beforeAcquire(this);
+            next = acquireWrite(true, deadline);
+            LockOrderDetector.afterAcquire(this, next != INTERRUPTED && next != 0L);
+            if (next != INTERRUPTED) {
                 return next;
             }
         }
@@ -576,8 +777,13 @@ public class StampedLock implements java.io.Serializable {
      */
     public long writeLockInterruptibly() throws InterruptedException {
         long next;
-        if (!Thread.interrupted() && (next = acquireWrite(true, 0L)) != INTERRUPTED) {
-            return next;
+        if (!Thread.interrupted()) {
+            LockOrderDetector.beforeAcquire(this);
+            next = acquireWrite(true, 0L);
+            LockOrderDetector.afterAcquire(this, next != INTERRUPTED);
+            if (next != INTERRUPTED) {
+                return next;
+            }
         }
         throw new InterruptedException();
     }
@@ -593,10 +799,12 @@ public class StampedLock implements java.io.Serializable {
             }
             else if (m < RFULL) {
                 if (U.compareAndSwapLong(this, STATE, s, next = s + RUNIT)) {
+                    LockOrderDetector.acquired(this);
                     return next;
                 }
             }
             else if ((next = tryIncReaderOverflow(s)) != 0L) {
+                LockOrderDetector.acquired(this);
                 return next;
             }
         }
@@ -612,10 +820,12 @@ public class StampedLock implements java.io.Serializable {
             if ((m = (s = state) & ABITS) != WBIT) {
                 if (m < RFULL) {
                     if (U.compareAndSwapLong(this, STATE, s, next = s + RUNIT)) {
+                        LockOrderDetector.acquired(this);
                         return next;
                     }
                 }
                 else if ((next = tryIncReaderOverflow(s)) != 0L) {
+                    LockOrderDetector.acquired(this);
                     return next;
                 }
             }
@@ -625,7 +835,10 @@ public class StampedLock implements java.io.Serializable {
             if ((deadline = System.nanoTime() + nanos) == 0L) {
                 deadline = 1L;
             }
-            if ((next = acquireRead(true, deadline)) != INTERRUPTED) {
+            LockOrderDetector.beforeAcquire(this);
+            next = acquireRead(true, deadline);
+            LockOrderDetector.afterAcquire(this, next != INTERRUPTED && next != 0L);
+            if (next != INTERRUPTED) {
                 return next;
             }
         }
@@ -637,8 +850,13 @@ public class StampedLock implements java.io.Serializable {
      */
     public long readLockInterruptibly() throws InterruptedException {
         long next;
-        if (!Thread.interrupted() && (next = acquireRead(true, 0L)) != INTERRUPTED) {
-            return next;
+        if (!Thread.interrupted()) {
+            LockOrderDetector.beforeAcquire(this);
+            next = acquireRead(true, 0L);
+            LockOrderDetector.afterAcquire(this, next != INTERRUPTED);
+            if (next != INTERRUPTED) {
+                return next;
+            }
         }
         throw new InterruptedException();
     }
@@ -648,6 +866,15 @@ public class StampedLock implements java.io.Serializable {
      */
     public long tryOptimisticRead() {
         long s;
+        StampedLockStats st;
+        if ((st = stats) != null) {
+            st.optimisticAttempts.increment();
+            if (((s = state) & WBIT) != 0L) {
+                st.writerBlockedAttempts.increment();
+                return 0L;
+            }
+            return s & SBITS;
+        }
         return (((s = state) & WBIT) == 0L) ? (s & SBITS) : 0L;
     }
 
@@ -665,6 +892,7 @@ public class StampedLock implements java.io.Serializable {
                 }
                 //CAS获取写锁 成功 退出
                 if (U.compareAndSwapLong(this, STATE, s, next = s + WBIT)) {
+                    LockOrderDetector.acquired(this);
                     return next;
                 }
             }
@@ -704,10 +932,12 @@ public class StampedLock implements java.io.Serializable {
                 }
                 else if (m < RFULL) {
                     if (U.compareAndSwapLong(this, STATE, s, next = s + RUNIT)) {
+                        LockOrderDetector.acquired(this);
                         return next;
                     }
                 }
                 else if ((next = tryIncReaderOverflow(s)) != 0L) {
+                    LockOrderDetector.acquired(this);
                     return next;
                 }
             }
@@ -756,6 +986,7 @@ public class StampedLock implements java.io.Serializable {
                 if ((h = whead) != null && h.status != 0) {
                     release(h);
                 }
+                LockOrderDetector.released(this);
                 return next;
             }
             else if (a == 0L || a >= WBIT) {
@@ -766,10 +997,12 @@ public class StampedLock implements java.io.Serializable {
                     if (m == RUNIT && (h = whead) != null && h.status != 0) {
                         release(h);
                     }
+                    LockOrderDetector.released(this);
                     return next & SBITS;
                 }
             }
             else if ((next = tryDecReaderOverflow(s)) != 0L) {
+                LockOrderDetector.released(this);
                 return next & SBITS;
             }
         }
@@ -787,6 +1020,7 @@ public class StampedLock implements java.io.Serializable {
             if ((h = whead) != null && h.status != 0) {
                 release(h);
             }
+            LockOrderDetector.released(this);
             return true;
         }
         return false;
@@ -804,10 +1038,12 @@ public class StampedLock implements java.io.Serializable {
                     if (m == RUNIT && (h = whead) != null && h.status != 0) {
                         release(h);
                     }
+                    LockOrderDetector.released(this);
                     return true;
                 }
             }
             else if (tryDecReaderOverflow(s) != 0L) {
+                LockOrderDetector.released(this);
                 return true;
             }
         }
@@ -819,7 +1055,13 @@ public class StampedLock implements java.io.Serializable {
      */
     public boolean validate(long stamp) {
         U.loadFence();
-        return (stamp & SBITS) == (state & SBITS);
+        boolean valid = (stamp & SBITS) == (state & SBITS);
+        StampedLockStats st;
+        //stamp为0说明tryOptimisticRead()已经失败并计数 不重复统计
+        if (!valid && stamp != 0L && (st = stats) != null) {
+            st.validateFailures.increment();
+        }
+        return valid;
     }
 
     /**
@@ -834,6 +1076,7 @@ public class StampedLock implements java.io.Serializable {
         if ((h = whead) != null && h.status != 0) {
             release(h);
         }
+        LockOrderDetector.released(this);
     }
 
     /**
@@ -859,6 +1102,7 @@ public class StampedLock implements java.io.Serializable {
                 break;
             }
         }
+        LockOrderDetector.released(this);
     }
 
     /**
@@ -879,6 +1123,7 @@ public class StampedLock implements java.io.Serializable {
                 if ((h = whead) != null && h.status != 0) {
                     release(h);
                 }
+                LockOrderDetector.released(this);
                 return;
             }
             else if (a == 0L || a >= WBIT) {
@@ -889,10 +1134,12 @@ public class StampedLock implements java.io.Serializable {
                     if (m == RUNIT && (h = whead) != null && h.status != 0) {
                         release(h);
                     }
+                    LockOrderDetector.released(this);
                     return;
                 }
             }
             else if (tryDecReaderOverflow(s) != 0L) {
+                LockOrderDetector.released(this);
                 return;
             }
         }
@@ -908,7 +1155,7 @@ public class StampedLock implements java.io.Serializable {
     private int getReadLockCount(long s) {
         long readers;
         if ((readers = s & RBITS) >= RFULL) {
-            readers = RFULL + readerOverflow;
+            readers = Math.max(0L, RFULL + readerOverflow.sum());
         }
         return (int) readers;
     }
@@ -1065,6 +1312,7 @@ public class StampedLock implements java.io.Serializable {
         if ((h = whead) != null && h.status != 0) {
             release(h);
         }
+        LockOrderDetector.released(this);
     }
 
     final void unstampedUnlockRead() {
@@ -1086,21 +1334,45 @@ public class StampedLock implements java.io.Serializable {
                 break;
             }
         }
+        LockOrderDetector.released(this);
     }
 
     private void readObject(java.io.ObjectInputStream s) throws java.io.IOException, ClassNotFoundException {
         s.defaultReadObject();
         state = ORIGIN; // reset to unlocked state
+        readerOverflow = new LongAdder();
+        spinLimit = SPINS;
+        headSpinLimit = HEAD_SPINS;
     }
 
+    /**
+     * 读锁数量达到RFULL后获取读锁
+     * 1.先累加计数器 再检查state 若state已经变化(被独占清零或写锁获取) 撤销累加 由调用方重试
+     * 2.撤销前等待RBITS独占结束：独占者的sum()可能已经读过累加所在的Cell 此时撤销会让它看到-1而看不到+1
+     * 误判读锁已经全部释放 独占结束之后开始的独占一定能看到累加
+     * @return 成功返回读锁stamp 失败返回0
+     */
     private long tryIncReaderOverflow(long s) {
         // assert (s & ABITS) >= RFULL;
         if ((s & ABITS) == RFULL) {
-            if (U.compareAndSwapLong(this, STATE, s, s | RBITS)) {
-                ++readerOverflow;
-                state = s;
+            LongAdder ro = readerOverflow;
+            ro.increment();
+            long ns;
+            if ((ns = state) == s) {
+                StampedLockStats st;
+                if ((st = stats) != null) {
+                    st.readerOverflows.increment();
+                }
                 return s;
             }
+            while ((ns & ABITS) == RBITS) {
+                if ((LockSupport.nextSecondarySeed() & OVERFLOW_YIELD_RATE) == 0) {
+                    Thread.yield();
+                }
+                ns = state;
+            }
+            ro.decrement();
+            tryClearReaderOverflow();
         }
         else if ((LockSupport.nextSecondarySeed() & OVERFLOW_YIELD_RATE) == 0) {
             Thread.yield();
@@ -1108,22 +1380,17 @@ public class StampedLock implements java.io.Serializable {
         return 0L;
     }
 
+    /**
+     * 读锁数量达到RFULL后释放读锁
+     * 读锁位固定为RFULL 释放只需要减计数器 然后检查读锁是否已经全部释放
+     * @return 成功返回当前state 失败返回0
+     */
     private long tryDecReaderOverflow(long s) {
         // assert (s & ABITS) >= RFULL;
         if ((s & ABITS) == RFULL) {
-            if (U.compareAndSwapLong(this, STATE, s, s | RBITS)) {
-                int r;
-                long next;
-                if ((r = readerOverflow) > 0) {
-                    readerOverflow = r - 1;
-                    next = s;
-                }
-                else {
-                    next = s - RUNIT;
-                }
-                state = next;
-                return next;
-            }
+            readerOverflow.decrement();
+            tryClearReaderOverflow();
+            return s;
         }
         else if ((LockSupport.nextSecondarySeed() & OVERFLOW_YIELD_RATE) == 0) {
             Thread.yield();
@@ -1131,6 +1398,41 @@ public class StampedLock implements java.io.Serializable {
         return 0L;
     }
 
+    /**
+     * 读锁总数为0时退出溢出模式
+     * 1.每次减计数器之后调用 最后一个减计数器的线程一定能看到总数为0
+     * 2.通过RBITS独占state后重新求和 确认为0才将读锁位清0 否则恢复state
+     * 3.其他线程独占期间 等待独占结束后再检查 避免独占者求和时漏掉自己的释放
+     */
+    private void tryClearReaderOverflow() {
+        LongAdder ro = readerOverflow;
+        for (long s; ; ) {
+            long m = (s = state) & ABITS;
+            if (m == RBITS) {
+                if ((LockSupport.nextSecondarySeed() & OVERFLOW_YIELD_RATE) == 0) {
+                    Thread.yield();
+                }
+            }
+            else if (m != RFULL || ro.sum() != -RFULL) {
+                break;
+            }
+            else if (U.compareAndSwapLong(this, STATE, s, s | RBITS)) {
+                StampedLock.WNode h;
+                if (ro.sum() == -RFULL) {
+                    ro.add(RFULL);
+                    state = s - RFULL;
+                    if ((h = whead) != null && h.status != 0) {
+                        release(h);
+                    }
+                }
+                else {
+                    state = s;
+                }
+                break;
+            }
+        }
+    }
+
     private void release(StampedLock.WNode h) {
         if (h != null) {
             StampedLock.WNode q;
@@ -1144,7 +1446,7 @@ public class StampedLock implements java.io.Serializable {
                 }
             }
             if (q != null && (w = q.thread) != null) {
-                U.unpark(w);
+                LockSupport.unpark(w);
             }
         }
     }
@@ -1169,7 +1471,7 @@ public class StampedLock implements java.io.Serializable {
             if (group == node) {
                 for (StampedLock.WNode r = group.cowait; r != null; r = r.cowait) {
                     if ((w = r.thread) != null) {
-                        U.unpark(w);       // wake up uncancelled co-waiters
+                        LockSupport.unpark(w);       // wake up uncancelled co-waiters
                     }
                 }
                 for (StampedLock.WNode pred = node.prev; pred != null; ) { // unsplice
@@ -1195,7 +1497,7 @@ public class StampedLock implements java.io.Serializable {
                     }
                     if (succ != null && (w = succ.thread) != null) {
                         succ.thread = null;
-                        U.unpark(w);       // wake up succ to observe new pred
+                        LockSupport.unpark(w);       // wake up succ to observe new pred
                     }
                     if (pred.status != CANCELLED || (pp = pred.prev) == null) {
                         break;
@@ -0,0 +1,106 @@
+package com.xz.concurrent.locks;
+
+import com.xz.concurrent.atomic.LongAdder;
+
+/**
+ * StampedLock的统计信息 通过new StampedLock(true)开启
+ * 1.计数器使用LongAdder 多个读线程同时计数不会在同一个变量上竞争
+ * 2.统计项：
+ * *optimisticAttempts：tryOptimisticRead()的调用次数
+ * *writerBlockedAttempts：tryOptimisticRead()因为写锁被占用而返回0的次数(写线程导致的重试)
+ * *validateFailures：validate()返回false的次数(乐观读失效)
+ * *readerOverflows：读锁数量超过RFULL 通过tryIncReaderOverflow()记录到readerOverflow的次数
+ * *spinsWasted：自旋后仍然入队的自旋次数总和
+ * *parksAvoided：通过自旋获取到锁 没有阻塞的次数
+ * 3.各个计数器之间不是原子快照 只用于观察趋势
+ */
+public final class StampedLockStats {
+
+    final LongAdder optimisticAttempts = new LongAdder();
+
+    final LongAdder writerBlockedAttempts = new LongAdder();
+
+    final LongAdder validateFailures = new LongAdder();
+
+    final LongAdder readerOverflows = new LongAdder();
+
+    final LongAdder spinsWasted = new LongAdder();
+
+    final LongAdder parksAvoided = new LongAdder();
+
+    StampedLockStats() {
+    }
+
+    /**
+     * tryOptimisticRead()的调用次数
+     */
+    public long getOptimisticAttempts() {
+        return optimisticAttempts.sum();
+    }
+
+    /**
+     * 写锁被占用导致乐观读直接失败的次数
+     */
+    public long getWriterBlockedAttempts() {
+        return writerBlockedAttempts.sum();
+    }
+
+    /**
+     * validate()失败的次数
+     */
+    public long getValidateFailures() {
+        return validateFailures.sum();
+    }
+
+    /**
+     * 进入readerOverflow慢路径的次数
+     */
+    public long getReaderOverflows() {
+        return readerOverflows.sum();
+    }
+
+    /**
+     * 被浪费的自旋次数
+     */
+    public long getSpinsWasted() {
+        return spinsWasted.sum();
+    }
+
+    /**
+     * 通过自旋避免阻塞的次数
+     */
+    public long getParksAvoided() {
+        return parksAvoided.sum();
+    }
+
+    /**
+     * 乐观读的失败率：(写锁导致的直接失败 + validate失败) / 乐观读次数
+     */
+    public double getOptimisticFailureRate() {
+        long attempts = optimisticAttempts.sum();
+        if (attempts == 0L) {
+            return 0.0;
+        }
+        return (double) (writerBlockedAttempts.sum() + validateFailures.sum()) / attempts;
+    }
+
+    /**
+     * 清空所有计数器
+     */
+    public void reset() {
+        optimisticAttempts.reset();
+        writerBlockedAttempts.reset();
+        validateFailures.reset();
+        readerOverflows.reset();
+        spinsWasted.reset();
+        parksAvoided.reset();
+    }
+
+    @Override
+    public String toString() {
+        return super.toString() + "[optimisticAttempts = " + getOptimisticAttempts() + ", writerBlockedAttempts = "
+                + getWriterBlockedAttempts() + ", validateFailures = " + getValidateFailures() + ", readerOverflows = "
+                + getReaderOverflows() + ", spinsWasted = " + getSpinsWasted() + ", parksAvoided = " + getParksAvoided()
+                + "]";
+    }
+}
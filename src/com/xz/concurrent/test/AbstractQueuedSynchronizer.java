@@ -8,7 +8,7 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.LockSupport;
 
 import com.xz.concurrent.locks.AbstractOwnableSynchronizer;
-import com.xz.concurrent.locks.Condition;
+import java.util.concurrent.locks.Condition;
 import sun.misc.Unsafe;
 
 /**
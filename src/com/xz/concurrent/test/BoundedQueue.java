@@ -1,10 +1,13 @@
 package com.xz.concurrent.test;
 
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import com.xz.concurrent.locks.Condition;
+import com.xz.concurrent.locks.ReentrantLock;
 
 /**
+ * 一把锁两个Condition实现的有界队列 示例
+ * 等待使用Condition.await() 不能使用Object.wait()(没有持有Condition对象的监视器)
+ * 生产者和消费者竞争同一把锁 高并发下使用com.xz.concurrent.collection.LinkedBlockingQueue(双锁)
+ * 或者MpmcArrayBlockingQueue(无锁环形数组)
  * @author xuanzhou
  * @date 2019/11/18 16:01
  */
@@ -14,7 +17,7 @@ public class BoundedQueue<T> {
 
     private Object[] item;
 
-    private Lock lock = new ReentrantLock();
+    private ReentrantLock lock = new ReentrantLock();
 
     private Condition noEmpty = lock.newCondition();
 
@@ -28,7 +31,7 @@ public class BoundedQueue<T> {
         lock.lock();
         try {
             while (count == item.length) {
-                noFull.wait();
+                noFull.await();
             }
 
             item[ addIndex ] = t;
@@ -49,9 +52,10 @@ public class BoundedQueue<T> {
 
         try {
             while (count == 0) {
-                noEmpty.wait();
+                noEmpty.await();
             }
             Object x = item[ removeIndex ];
+            item[ removeIndex ] = null;
 
             if (++removeIndex == item.length) {
                 removeIndex = 0;
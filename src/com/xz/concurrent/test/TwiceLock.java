@@ -1,13 +1,15 @@
 package com.xz.concurrent.test;
 
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.AbstractQueuedSynchronizer;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 
+import com.xz.concurrent.locks.AbstractQueuedSynchronizer;
+
 /**
  * 实现共享式获取锁 同时获取的线程只能有两个 state 初始化为2 获取一个减1 线程释放 加1
  * state = 0,1,2
+ * 获取失败时通过AQS的acquireShared()排队阻塞 释放时唤醒 任意数量的许可见com.xz.concurrent.locks.Semaphore
  * @author xuanzhou
  * @date 2019/10/30 17:48
  */
@@ -27,7 +29,7 @@ public class TwiceLock implements Lock {
         public int tryAcquireShared(int arg) {
             for (; ; ) {
                 int current = getState();
-                int newCount = current = arg;
+                int newCount = current - arg;
                 if (newCount < 0 || compareAndSetState(current, newCount)) {
                     return newCount;
                 }
@@ -49,38 +51,41 @@ public class TwiceLock implements Lock {
     private final Sync sync = new Sync(2);
 
     /**
-     * 加锁
+     * 加锁 获取失败进入同步队列阻塞
      */
     @Override
     public void lock() {
-        sync.tryAcquireShared(1);
+        sync.acquireShared(1);
     }
 
     @Override
     public void lockInterruptibly() throws InterruptedException {
-
+        sync.acquireSharedInterruptibly(1);
     }
 
     @Override
     public boolean tryLock() {
-        return false;
+        return sync.tryAcquireShared(1) >= 0;
     }
 
     @Override
     public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
-        return false;
+        return sync.tryAcquireSharedNanos(1, unit.toNanos(time));
     }
 
     /**
-     * 释放锁
+     * 释放锁 唤醒等待线程
      */
     @Override
     public void unlock() {
-        sync.tryReleaseShared(1);
+        sync.releaseShared(1);
     }
 
+    /**
+     * 共享锁不支持Condition
+     */
     @Override
     public Condition newCondition() {
-        return null;
+        throw new UnsupportedOperationException();
     }
 }